@@ -0,0 +1,212 @@
+package bn.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bridge to the classes of the core, which are in the default package and can't be imported
+ * Every handle is a static final constant typed with Object, so the JIT inlines the calls like direct ones
+ */
+final class Core {
+
+    static final Class<?> FACTOR = load("Factor");
+    static final Class<?> VARIABLE = load("Variable");
+    static final Class<?> BN = load("BN");
+    static final Class<?> COUNTER = load("Counter");
+    static final Class<?> EVIDENCE = load("Evidence");
+    static final Class<?> SYMBOL_TABLE = load("SymbolTable");
+
+    private static final MethodHandle READ_XML = find(load("FileManager"), "readXML", org.w3c.dom.Document.class, String.class);
+    private static final MethodHandle BUILD_VARIABLES = find(load("FileManager"), "buildVariables", List.class, org.w3c.dom.Document.class);
+    private static final MethodHandle LOAD_VARIABLES = find(load("FileManager"), "loadVariables", List.class, String.class);
+    private static final MethodHandle NEW_BN = constructor(BN, List.class);
+    private static final MethodHandle NEW_COUNTER = constructor(COUNTER);
+    private static final MethodHandle INTEGRATE_TWO_FACTORS = find(load("CPT"), "integrateTwoFactors", FACTOR, FACTOR, FACTOR, COUNTER);
+    private static final MethodHandle ELIMINATE = find(load("CPT"), "eliminate", FACTOR, FACTOR, VARIABLE, COUNTER);
+    private static final MethodHandle UPDATE_CPT = find(load("CPT"), "updateCPT", FACTOR, EVIDENCE, FACTOR);
+    private static final MethodHandle VE = find(load("VariableElimination"), "VE", List.class,
+            String.class, String.class, ArrayList.class, List.class, BN);
+    private static final MethodHandle RESOLVE_EVIDENCE = find(EVIDENCE, "resolve", EVIDENCE, List.class, SYMBOL_TABLE);
+    private static final MethodHandle GET_SYMBOL_TABLE = virtual(BN, "getSymbolTable", SYMBOL_TABLE);
+    private static final MethodHandle GET_VARIABLES = virtual(BN, "getVariables", List.class);
+    private static final MethodHandle GET_CPT = virtual(VARIABLE, "getCPT", FACTOR);
+    private static final MethodHandle GET_PARENTS = virtual(VARIABLE, "getParents", List.class);
+    private static final MethodHandle GET_NAME = virtual(VARIABLE, "getName", String.class);
+    private static final MethodHandle GET_OUTCOMES = virtual(VARIABLE, "getOutcomes", List.class);
+    private static final MethodHandle SIZE = virtual(FACTOR, "size", int.class);
+
+    private Core() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The core classes are not on the class path", e);
+        }
+    }
+
+    /**
+     * Finding a static method and erasing its types to Object
+     */
+    private static MethodHandle find(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(returnType, parameters));
+            return erase(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+            return erase(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findConstructor(owner, MethodType.methodType(void.class, parameters));
+            return erase(handle);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type().erase();
+        if (type.returnType().isPrimitive()) {
+            return handle.asType(type);
+        }
+        return handle.asType(type.changeReturnType(Object.class));
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) return (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        return new IllegalStateException(e);
+    }
+
+    static Object readXML(String filePath) {
+        try {
+            return (Object) READ_XML.invokeExact((Object) filePath);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> buildVariables(Object doc) {
+        try {
+            return (List<?>) (Object) BUILD_VARIABLES.invokeExact(doc);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> loadVariables(String filePath) {
+        try {
+            return (List<?>) (Object) LOAD_VARIABLES.invokeExact((Object) filePath);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newBN(List<?> variables) {
+        try {
+            return (Object) NEW_BN.invokeExact((Object) variables);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newCounter() {
+        try {
+            return (Object) NEW_COUNTER.invokeExact();
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object integrateTwoFactors(Object x, Object y, Object counter) {
+        try {
+            return (Object) INTEGRATE_TWO_FACTORS.invokeExact(x, y, counter);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object eliminate(Object factor, Object variable, Object counter) {
+        try {
+            return (Object) ELIMINATE.invokeExact(factor, variable, counter);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object updateCPT(Object evidence, Object factor) {
+        try {
+            return (Object) UPDATE_CPT.invokeExact(evidence, factor);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> ve(String variable, String value, ArrayList<String[]> evidence, List<String> order, Object bn) {
+        try {
+            return (List<?>) (Object) VE.invokeExact((Object) variable, (Object) value, (Object) evidence, (Object) order, bn);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object resolveEvidence(List<String[]> evidence, Object bn) {
+        try {
+            Object symbols = (Object) GET_SYMBOL_TABLE.invokeExact(bn);
+            return (Object) RESOLVE_EVIDENCE.invokeExact((Object) evidence, symbols);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> getVariables(Object bn) {
+        return (List<?>) call(GET_VARIABLES, bn);
+    }
+
+    static Object getCPT(Object variable) {
+        return call(GET_CPT, variable);
+    }
+
+    static List<?> getParents(Object variable) {
+        return (List<?>) call(GET_PARENTS, variable);
+    }
+
+    static String getName(Object variable) {
+        return (String) call(GET_NAME, variable);
+    }
+
+    static List<?> getOutcomes(Object variable) {
+        return (List<?>) call(GET_OUTCOMES, variable);
+    }
+
+    static int size(Object factor) {
+        try {
+            return (int) SIZE.invokeExact(factor);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Object call(MethodHandle handle, Object receiver) {
+        try {
+            return (Object) handle.invokeExact(receiver);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+}
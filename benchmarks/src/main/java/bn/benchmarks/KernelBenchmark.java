@@ -0,0 +1,42 @@
+package bn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The factor kernels on the largest CPT of a network and the CPT of its first parent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    @Param({"xml/BNA.xml", "xml/BNB.xml", "xml/BNC.xml"})
+    public String network;
+
+    private Network loaded;
+
+    @Setup
+    public void setup() {
+        this.loaded = Network.load(this.network);
+    }
+
+    @Benchmark
+    public Object integrateTwoFactors() {
+        return Core.integrateTwoFactors(this.loaded.largest, this.loaded.parentCPT, Core.newCounter());
+    }
+
+    @Benchmark
+    public Object eliminate() {
+        return Core.eliminate(this.loaded.product, this.loaded.parent, Core.newCounter());
+    }
+
+    @Benchmark
+    public Object updateCPT() {
+        return Core.updateCPT(this.loaded.resolvedEvidence, this.loaded.largest);
+    }
+}
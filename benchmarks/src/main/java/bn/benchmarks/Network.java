@@ -0,0 +1,79 @@
+package bn.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BN loaded from a file and the inputs of the benchmarks taken from it
+ * The query is the last variable and the evidence is the first variable which is not the query,
+ * the kernels run on the largest CPT and the CPT of its first parent
+ */
+final class Network {
+
+    final String path;
+    final Object bn;
+    final String query;
+    final String value;
+    final ArrayList<String[]> evidence;
+    final Object resolvedEvidence;
+    final Object largest;
+    final Object parentCPT;
+    final Object parent;
+    final Object product;
+
+    private Network(String path) {
+        this.path = path;
+        this.bn = Core.newBN(new ArrayList<>(Core.loadVariables(path)));
+
+        List<?> variables = Core.getVariables(this.bn);
+        Object last = variables.get(variables.size() - 1);
+        this.query = Core.getName(last);
+        this.value = String.valueOf(Core.getOutcomes(last).get(0));
+
+        // Observing a variable which isn't the query
+        this.evidence = new ArrayList<>();
+        Object first = variables.get(0);
+        if (first != last) {
+            this.evidence.add(new String[]{Core.getName(first), String.valueOf(Core.getOutcomes(first).get(0))});
+        }
+
+        // The largest CPT with parents, and the CPT of its first parent
+        Object owner = null;
+        for (Object variable : variables) {
+            if (Core.getParents(variable).isEmpty()) continue;
+            if (owner == null || Core.size(Core.getCPT(variable)) > Core.size(Core.getCPT(owner))) owner = variable;
+        }
+        if (owner == null) owner = last;
+        this.largest = Core.getCPT(owner);
+        this.parent = Core.getParents(owner).isEmpty() ? owner : Core.getParents(owner).get(0);
+        this.parentCPT = Core.getCPT(this.parent);
+        this.product = Core.integrateTwoFactors(this.largest, this.parentCPT, Core.newCounter());
+
+        // Observing the parent so that updateCPT restricts the largest CPT
+        List<String[]> observed = new ArrayList<>();
+        observed.add(new String[]{Core.getName(this.parent), String.valueOf(Core.getOutcomes(this.parent).get(0))});
+        this.resolvedEvidence = Core.resolveEvidence(observed, this.bn);
+    }
+
+    /**
+     * Loading a network given relative to the root of the repository or to the working directory
+     *
+     * @param path the path of the XMLBIF file
+     * @return network
+     */
+    static Network load(String path) {
+        return new Network(resolve(path));
+    }
+
+    static String resolve(String path) {
+        File file = new File(path);
+        if (!file.exists() && !file.isAbsolute() && new File("..", path).exists()) {
+            file = new File("..", path);
+        }
+        if (!file.exists()) {
+            throw new IllegalArgumentException("Network not found: " + path);
+        }
+        return file.getPath();
+    }
+}
@@ -0,0 +1,44 @@
+package bn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an XMLBIF file and building its variables, with the DOM and the streaming loaders
+ * Other networks can be given with "-p network=path/to/network.xml"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"xml/BNA.xml", "xml/BNB.xml", "xml/BNC.xml"})
+    public String network;
+
+    private String path;
+
+    @Setup
+    public void setup() {
+        this.path = Network.resolve(this.network);
+    }
+
+    @Benchmark
+    public Object readXML() {
+        return Core.readXML(this.path);
+    }
+
+    @Benchmark
+    public List<?> readXMLAndBuildVariables() {
+        return Core.buildVariables(Core.readXML(this.path));
+    }
+
+    @Benchmark
+    public List<?> loadVariables() {
+        return Core.loadVariables(this.path);
+    }
+}
@@ -0,0 +1,44 @@
+package bn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full queries of Variable Elimination with the order from the heuristic,
+ * the marginal of the last variable and its posterior given the first variable
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableEliminationBenchmark {
+
+    @Param({"xml/BNA.xml", "xml/BNB.xml", "xml/BNC.xml"})
+    public String network;
+
+    private Network loaded;
+
+    private final ArrayList<String[]> noEvidence = new ArrayList<>();
+
+    private final List<String> order = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        this.loaded = Network.load(this.network);
+    }
+
+    @Benchmark
+    public List<?> marginal() {
+        return Core.ve(this.loaded.query, this.loaded.value, this.noEvidence, this.order, this.loaded.bn);
+    }
+
+    @Benchmark
+    public List<?> posterior() {
+        return Core.ve(this.loaded.query, this.loaded.value, this.loaded.evidence, this.order, this.loaded.bn);
+    }
+}
@@ -0,0 +1,74 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.ref.Cleaner;
+
+/**
+ * The values of a factor in native memory allocated from a shared Arena, as doubles or as floats
+ * The memory is released by free() as soon as the factor isn't needed,
+ * or by a Cleaner if the factor becomes unreachable before that
+ * This class needs JDK 22, or JDK 21 with --enable-preview, and is loaded by OffHeap when it is on the class path
+ */
+public final class SegmentStorage implements ValueStorage {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final MemorySegment segment;
+
+    private final int size;
+
+    private final boolean single;
+
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * Constructor
+     * The memory is zeroed by the arena
+     *
+     * @param size   the number of values
+     * @param single true if the values are stored as floats
+     */
+    public SegmentStorage(int size, boolean single) {
+        Arena arena = Arena.ofShared();
+        int bytes = single ? Float.BYTES : Double.BYTES;
+        this.segment = arena.allocate((long) size * bytes, bytes);
+        this.size = size;
+        this.single = single;
+        // The action refers to the arena only, so that the storage can become unreachable
+        this.cleanable = CLEANER.register(this, arena::close);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public double get(int index) {
+        if (this.single) return this.segment.getAtIndex(ValueLayout.JAVA_FLOAT, index);
+        return this.segment.getAtIndex(ValueLayout.JAVA_DOUBLE, index);
+    }
+
+    @Override
+    public void write(int index, double[] values, int from, int length) {
+        if (this.single) {
+            for (int i = 0; i < length; i++) {
+                this.segment.setAtIndex(ValueLayout.JAVA_FLOAT, index + i, (float) values[from + i]);
+            }
+            return;
+        }
+        // The offset in the segment is given in bytes
+        MemorySegment.copy(values, from, this.segment, ValueLayout.JAVA_DOUBLE, (long) index * Double.BYTES, length);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public void free() {
+        // Closing the arena once, later calls do nothing
+        this.cleanable.clean();
+    }
+}
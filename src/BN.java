@@ -11,6 +11,8 @@ public class BN {
 
     private final LinkedHashMap<String, List<Variable>> children;
 
+    private final SymbolTable symbols;
+
     private static final List<Variable> empties = new ArrayList<>();
 
     /**
@@ -22,9 +24,26 @@ public class BN {
         this.variables = new ArrayList<>(variables);
         this.parents = new LinkedHashMap<>();
         this.children = new LinkedHashMap<>();
+        this.symbols = initSymbolTable(this.variables);
         initParentsAndChildren();
     }
 
+    /**
+     * Reusing the symbol table built by FileManager or building one for the given variables
+     *
+     * @param variables
+     * @return symbol table
+     */
+    private static SymbolTable initSymbolTable(List<Variable> variables) {
+        if (!variables.isEmpty()) {
+            SymbolTable symbols = variables.get(0).getSymbolTable();
+            if (symbols != null && symbols.size() == variables.size()) {
+                return symbols;
+            }
+        }
+        return new SymbolTable(variables);
+    }
+
     /**
      * Initialization parents and children
      */
@@ -82,6 +101,13 @@ public class BN {
     }
 
 
+    /**
+     * @return - children
+     */
+    public LinkedHashMap<String, List<Variable>> getChildren() {
+        return this.children;
+    }
+
     /**
      * @return - The number of variables
      */
@@ -96,13 +122,21 @@ public class BN {
      * @return variable
      */
     public Variable getVariableByName(String name) {
-        for (int i = 0; i < this.getVariablesSize(); i++) {
-            Variable variable = this.variables.get(i);
-            if (variable.getName().equals(name)) {
-                return variable;
-            }
-        }
-        return null;
+        return this.symbols.getVariable(name);
+    }
+
+    /**
+     * @return - the number of changes of the CPTs, it changes whenever a CPT is built again
+     */
+    public long getVersion() {
+        return this.symbols.getVersion();
+    }
+
+    /**
+     * @return - the symbol table of the variables
+     */
+    public SymbolTable getSymbolTable() {
+        return this.symbols;
     }
 
     /**
@@ -115,7 +149,7 @@ public class BN {
         StringBuilder result = new StringBuilder();
         result.append("TO STRING BNs:\n");
         for (Variable variable : this.variables) {
-            result.append(variable.getName()).append(":\n").append(Utils.hashMapToString(variable.getCPT()));
+            result.append(variable.getName()).append(":\n").append(variable.getCPT());
         }
         return result.toString();
     }
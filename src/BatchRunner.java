@@ -0,0 +1,192 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class for answering a stream of queries on one BN
+ * Each line of the input is "query[;order[;evidence]]" in the same format as the console, e.g.
+ * "D:T", "D:T;A,B,C", "D:T;;A:T B:F", and blank lines or lines starting with '#' are skipped
+ * Each query is written as a line of CSV as soon as it is answered:
+ * "line,status,query,probability" where status is OK or ERROR and an error has its message as the probability
+ * With a sampled engine the 95% confidence interval of each estimate follows in two more columns,
+ * "line,status,query,probability,lower,upper", and they are empty for an error
+ */
+public class BatchRunner {
+
+    /**
+     * The number of queries written before the output is flushed
+     */
+    private static final int FLUSH_INTERVAL = 1024;
+
+    /**
+     * The number of lines read at once when the queries run in parallel
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final CompiledNetwork network;
+
+    private final InferenceEngine engine;
+
+    // The engine if it is sampled, whose rows have the intervals
+    private final SamplingEngine sampler;
+
+    /**
+     * Constructor
+     *
+     * @param network the snapshot of the BN for resolving the queries and running the queries with an order
+     * @param engine  the engine for the queries without an order, it must be safe to call from many threads
+     *                if the queries run in parallel
+     */
+    public BatchRunner(CompiledNetwork network, InferenceEngine engine) {
+        this.network = network;
+        this.engine = engine;
+        this.sampler = engine instanceof SamplingEngine ? (SamplingEngine) engine : null;
+    }
+
+    /**
+     * Reading the queries line by line and writing the results
+     *
+     * @param in  the queries
+     * @param out the results
+     * @return the number of queries answered
+     * @throws IOException if reading or writing fails
+     */
+    public long run(Reader in, Writer out) throws IOException {
+        return run(in, out, null);
+    }
+
+    /**
+     * Reading the queries in chunks, answering each chunk in parallel and writing the results in the order of the lines
+     *
+     * @param in       the queries
+     * @param out      the results
+     * @param executor the pool for the queries, or null to answer them one by one
+     * @return the number of queries answered
+     * @throws IOException if reading or writing fails
+     */
+    public long run(Reader in, Writer out, QueryExecutor executor) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+
+        writer.write(this.sampler == null ? "line,status,query,probability" : "line,status,query,probability,lower,upper");
+        writer.newLine();
+
+        int chunkSize = executor == null ? 1 : CHUNK_SIZE;
+        AtomicLong answered = new AtomicLong();
+        List<Callable<String>> chunk = new ArrayList<>(chunkSize);
+        long written = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            long number = lineNumber;
+            String query = line;
+            chunk.add(() -> answer(number, query, answered));
+
+            if (chunk.size() == chunkSize) {
+                written += write(chunk, writer, executor);
+                chunk.clear();
+                if (executor != null || written % FLUSH_INTERVAL == 0) writer.flush();
+            }
+        }
+        write(chunk, writer, executor);
+        writer.flush();
+        return answered.get();
+    }
+
+    /**
+     * Answering the queries and writing the results in order
+     *
+     * @return the number of lines written
+     */
+    private static int write(List<Callable<String>> chunk, BufferedWriter writer, QueryExecutor executor) throws IOException {
+        List<String> rows;
+        if (executor == null) {
+            rows = new ArrayList<>(chunk.size());
+            for (Callable<String> task : chunk) {
+                try {
+                    rows.add(task.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        } else {
+            rows = executor.invokeAll(chunk);
+        }
+        for (String row : rows) {
+            writer.write(row);
+            writer.newLine();
+        }
+        return rows.size();
+    }
+
+    /**
+     * Answering one line and formatting the result
+     *
+     * @param lineNumber the number of the line
+     * @param line       the line
+     * @param answered   the number of queries answered
+     * @return the line of CSV
+     */
+    private String answer(long lineNumber, String line, AtomicLong answered) {
+        String[] fields = line.split(";", -1);
+        String query = fields[0].trim().replace(',', ' ');
+        try {
+            double[] result = answer(fields);
+            answered.incrementAndGet();
+            String row = lineNumber + ",OK," + query + "," + result[0];
+            return this.sampler == null ? row : row + "," + result[1] + "," + result[2];
+        } catch (RuntimeException e) {
+            String row = lineNumber + ",ERROR," + query + "," + String.valueOf(e.getMessage()).replace(',', ' ');
+            return this.sampler == null ? row : row + ",,";
+        }
+    }
+
+    /**
+     * Answering one query
+     *
+     * @param fields the query, the order and the evidence of the line
+     * @return the probability of the query, and the ends of its interval if the engine is sampled
+     */
+    private double[] answer(String[] fields) {
+        String[] query = fields[0].trim().split(":");
+        if (query.length != 2) {
+            throw new IllegalArgumentException("Invalid query: " + fields[0].trim());
+        }
+        int id = this.network.resolveVariable(query[0]);
+        int outcome = this.network.resolveOutcome(id, query[1]);
+
+        int[] order = new int[0];
+        if (fields.length > 1 && !fields[1].isBlank()) {
+            order = this.network.resolveOrder(Arrays.asList(fields[1].trim().split(",")));
+        }
+
+        List<String[]> evidences = new ArrayList<>();
+        if (fields.length > 2 && !fields[2].isBlank()) {
+            for (String st : fields[2].trim().split("\\s+")) {
+                String[] ev = st.split(":");
+                if (ev.length != 2) {
+                    throw new IllegalArgumentException("Invalid evidence: " + st);
+                }
+                evidences.add(ev);
+            }
+        }
+        Evidence evidence = this.network.resolveEvidence(evidences);
+
+        // The given order only matters for Variable Elimination, whose probability is exact
+        if (order.length > 0) {
+            double probability = this.network.posterior(id, evidence, order, new Counter())[outcome];
+            return new double[]{probability, probability, probability};
+        }
+        if (this.sampler != null) {
+            double[][] interval = this.sampler.interval(id, evidence);
+            return new double[]{interval[0][outcome], interval[1][outcome], interval[2][outcome]};
+        }
+        double probability = this.engine.posterior(id, evidence)[outcome];
+        return new double[]{probability, probability, probability};
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The class for writing a BN as a compiled binary file and mapping it back into memory
+ * The CPTs are read from the mapped file without copying them, so several JVMs on one host share the page cache
+ *
+ * Every number is little-endian
+ * header    : int magic "BNET", int version, int number of variables, int reserved, long offset of the tables
+ * variables : in the order of their ids, each is
+ * string name, int number of outcomes, string outcomes, int number of parents, int ids of the parents,
+ * long offset of the table from the offset of the tables, int number of values
+ * (a string is an int number of bytes followed by the bytes in UTF-8)
+ * tables    : the values of each CPT as doubles, aligned to 8 bytes, in the order of the scope of the CPT
+ */
+public class BinaryNetwork {
+
+    /**
+     * "BNET" read as a little-endian int
+     */
+    public static final int MAGIC = 0x54454E42;
+
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * The largest region mapped at once, the tables are split into regions at the boundaries of the tables
+     */
+    private static final long MAX_REGION = 1L << 30;
+
+    private BinaryNetwork() {
+    }
+
+    /**
+     * Writing the variables of the BN and their CPTs
+     *
+     * @param bn       instance of BN class
+     * @param filePath the path of the compiled file
+     * @throws IOException if writing fails
+     */
+    public static void write(BN bn, String filePath) throws IOException {
+        SymbolTable symbols = bn.getSymbolTable();
+        int n = symbols.size();
+
+        // The size of the description of the variables
+        long size = HEADER_SIZE;
+        List<byte[]> names = new ArrayList<>(n);
+        List<List<byte[]>> outcomes = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) {
+            Variable variable = symbols.getVariable(id);
+            byte[] name = variable.getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += 4 + name.length + 4;
+            List<byte[]> outcome = new ArrayList<>();
+            for (String o : variable.getOutcomes()) {
+                byte[] bytes = o.getBytes(StandardCharsets.UTF_8);
+                outcome.add(bytes);
+                size += 4 + bytes.length;
+            }
+            outcomes.add(outcome);
+            size += 4 + 4L * variable.getParents().size() + 8 + 4;
+        }
+        long tables = align(size);
+        if (tables > Integer.MAX_VALUE) {
+            throw new IOException("Too many variables to compile");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate((int) tables).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0).putLong(tables);
+        long offset = 0;
+        for (int id = 0; id < n; id++) {
+            Variable variable = symbols.getVariable(id);
+            putBytes(header, names.get(id));
+            header.putInt(outcomes.get(id).size());
+            for (byte[] outcome : outcomes.get(id)) putBytes(header, outcome);
+            header.putInt(variable.getParents().size());
+            for (Variable parent : variable.getParents()) header.putInt(parent.getId());
+            header.putLong(offset).putInt(variable.getCPT().size());
+            offset += 8L * variable.getCPT().size();
+        }
+        header.position(0).limit(header.capacity());
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int id = 0; id < n; id++) {
+                Factor cpt = symbols.getVariable(id).getCPT();
+                for (int i = 0; i < cpt.size(); i++) {
+                    if (!chunk.hasRemaining()) {
+                        chunk.flip();
+                        writeFully(channel, chunk);
+                        chunk.clear();
+                    }
+                    chunk.putDouble(cpt.getValue(i));
+                }
+            }
+            chunk.flip();
+            writeFully(channel, chunk);
+        }
+    }
+
+    /**
+     * @param filePath the path of a file
+     * @return - true if the file starts with the magic number of a compiled network
+     */
+    public static boolean isCompiled(String filePath) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) return false;
+            }
+            return magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Mapping a compiled file and building the variables, the CPTs are views of the mapped tables
+     *
+     * @param filePath the path of the compiled file
+     * @return variables in the order of their ids
+     * @throws IOException if the file can't be read or it isn't a compiled network of this version
+     */
+    public static List<Variable> map(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a compiled network: " + filePath);
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a compiled network: " + filePath);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of the compiled network " + filePath);
+            }
+            int n = header.getInt();
+            header.getInt();
+            long tables = header.getLong();
+            if (n < 0 || tables < HEADER_SIZE || tables > fileSize || tables > Integer.MAX_VALUE) {
+                throw corrupt(filePath);
+            }
+
+            // Reading the description of the variables
+            ByteBuffer description = channel.map(FileChannel.MapMode.READ_ONLY, 0, tables).order(ByteOrder.LITTLE_ENDIAN);
+            description.position(HEADER_SIZE);
+            List<Variable> variables = new ArrayList<>(n);
+            int[][] parents = new int[n][];
+            long[] offsets = new long[n];
+            int[] lengths = new int[n];
+            try {
+                for (int id = 0; id < n; id++) {
+                    String name = getString(description);
+                    int count = description.getInt();
+                    List<String> outcomes = new ArrayList<>(Math.max(count, 0));
+                    for (int k = 0; k < count; k++) outcomes.add(getString(description));
+                    variables.add(new Variable(name, outcomes));
+
+                    parents[id] = new int[description.getInt()];
+                    for (int i = 0; i < parents[id].length; i++) parents[id][i] = description.getInt();
+                    offsets[id] = description.getLong();
+                    lengths[id] = description.getInt();
+                }
+            } catch (RuntimeException e) {
+                throw corrupt(filePath);
+            }
+            new SymbolTable(variables);
+
+            // Mapping the tables in regions which end at the boundaries of the tables
+            long dataSize = fileSize - tables;
+            MappedByteBuffer region = null;
+            long regionStart = 0;
+            long regionEnd = 0;
+            for (int id = 0; id < n; id++) {
+                long start = offsets[id];
+                long end = start + 8L * lengths[id];
+                if (lengths[id] < 0 || start < 0 || start % 8 != 0 || end > dataSize) {
+                    throw corrupt(filePath);
+                }
+                if (region == null || start < regionStart || end > regionEnd) {
+                    regionStart = start;
+                    regionEnd = Math.min(dataSize, Math.max(end, start + MAX_REGION));
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, tables + regionStart, regionEnd - regionStart);
+                }
+
+                Variable variable = variables.get(id);
+                Variable[] scope = new Variable[parents[id].length];
+                long expected = variable.getCardinality();
+                for (int i = 0; i < scope.length; i++) {
+                    if (parents[id][i] < 0 || parents[id][i] >= n) throw corrupt(filePath);
+                    scope[i] = variables.get(parents[id][i]);
+                    expected *= scope[i].getCardinality();
+                }
+                if (expected != lengths[id]) {
+                    throw corrupt(filePath);
+                }
+
+                ByteBuffer bytes = region.duplicate();
+                bytes.position((int) (start - regionStart)).limit((int) (end - regionStart));
+                DoubleBuffer values = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                variable.initParents(new BufferStorage(values), scope);
+            }
+            return variables;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private static IOException corrupt(String filePath) {
+        return new IOException("Corrupt compiled network: " + filePath);
+    }
+}
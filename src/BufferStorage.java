@@ -0,0 +1,43 @@
+import java.nio.DoubleBuffer;
+
+/**
+ * The read-only values of a factor in a buffer, e.g. a region of a mapped file
+ */
+public class BufferStorage implements ValueStorage {
+
+    private final DoubleBuffer buffer;
+
+    /**
+     * Constructor
+     *
+     * @param buffer the values from the position to the limit of the buffer
+     */
+    public BufferStorage(DoubleBuffer buffer) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public int size() {
+        return this.buffer.capacity();
+    }
+
+    @Override
+    public double get(int index) {
+        return this.buffer.get(index);
+    }
+
+    @Override
+    public void write(int index, double[] values, int from, int length) {
+        throw new UnsupportedOperationException("The values of a mapped factor are read-only");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public void free() {
+        // The mapping is released with the buffer
+    }
+}
@@ -1,4 +1,3 @@
-
 import java.util.*;
 
 /**
@@ -7,64 +6,19 @@ import java.util.*;
 public class CPT {
 
     /**
-     * Building a CPT by given the names, outcomes, and values of the variable
+     * Building a CPT by given the variables and values of the variable
+     * A CPT with enough zeros, e.g. a deterministic one, keeps only its non-zero values,
+     * otherwise the values are rounded to floats in float precision
      *
-     * @param values   - values of outcomes for each variable
-     * @param outcomes - possible outcomes for each variable
-     * @param names    - names for each variable
+     * @param values - values of outcomes for each assignment
+     * @param scope  - the parents of the variable followed by the variable itself
      * @return - .
      */
-    public static LinkedHashMap<String, Double> constructCPT(double[] values, List<List<String>> outcomes, List<String> names) {
-        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
-
-//        System.out.println("values: " + Arrays.toString(values));
-//        for (List<String> o : outcomes) {
-//            System.out.println("outcome: " + o);
-//        }
-//        System.out.println("names: " + names);
-
-
-        String[] outputs = new String[values.length];
-        for (int i = 0; i < values.length; i++) {
-            outputs[i] = "";
-        }
-
-        int exp = values.length;
-        for (int i = 0; i < outcomes.size(); i++) {
-            List<String> o = outcomes.get(i);
-            exp = exp / o.size();
-            int k = 0, sum = 0;
-            for (int j = 0; j < values.length; j++) {
-                sum++;
-                outputs[j] += o.get(k);
-                if (i != outcomes.size() - 1) outputs[j] += ",";
-                if (sum >= exp) {
-                    k++;
-                    sum = 0;
-                    if (k >= o.size()) {
-                        k = 0;
-                    }
-                }
-            }
-        }
-
-        List<String> keys = new ArrayList<>();
-        for (String output : outputs) {
-            String[] splitKey = output.split(",");
-            StringBuilder keyLine = new StringBuilder();
-            for (int j = 0; j < splitKey.length; j++) {
-                String key = names.get(j) + "=" + splitKey[j];
-                keyLine.append(key);
-                if (j != splitKey.length - 1) keyLine.append(",");
-            }
-            keys.add(keyLine.toString());
-        }
-
-        for (int i = 0; i < values.length; i++) {
-            result.put(keys.get(i), values[i]);
-        }
-
-        return result;
+    public static Factor constructCPT(double[] values, Variable[] scope) {
+        SparseStorage sparse = SparseStorage.compress(values);
+        if (sparse != null) return new Factor(scope, sparse);
+        if (Precision.isSingle()) return new Factor(scope, new FloatStorage(values));
+        return new Factor(scope, values);
     }
 
     /**
@@ -73,33 +27,37 @@ public class CPT {
      * @param cptList the list of the factors to join
      * @return joined factor
      */
-    public static LinkedHashMap<String, Double> integrateFactors(List<LinkedHashMap<String, Double>> cptList, Counter counter) {
+    public static Factor integrateFactors(List<Factor> cptList, Counter counter) {
 
-        LinkedHashMap<String, Double> factor = cptList.get(0);
-        List<LinkedHashMap<String, Double>> newCptList = new ArrayList<>();
+        Factor factor = cptList.get(0);
+        List<Factor> newCptList = new ArrayList<>();
         for (int i = 1; i < cptList.size(); i++) {
             newCptList.add(cptList.get(i));
         }
-        return integrateFactors(newCptList, factor, counter);
+        return integrateFactors(newCptList, factor, new HashSet<>(), counter);
     }
 
-    private static LinkedHashMap<String, Double> integrateFactors(List<LinkedHashMap<String, Double>> cptList, LinkedHashMap<String, Double> factor, Counter counter) {
+    /**
+     * @param owned the products made while joining, they are freed as soon as they are joined again
+     */
+    private static Factor integrateFactors(List<Factor> cptList, Factor factor, Set<Factor> owned, Counter counter) {
 
         if (cptList.isEmpty()) return factor;
 
         cptList.add(factor);
         cptList = sortFactors(cptList);
 
-        factor = cptList.get(0);
-        factor = integrateTwoFactors(factor, cptList.get(1), counter);
-        factor = Utils.removeDuplicateValuesInKeys(factor);
+        factor = integrateTwoFactors(cptList.get(0), cptList.get(1), counter);
+        if (owned.remove(cptList.get(0))) cptList.get(0).free();
+        if (owned.remove(cptList.get(1))) cptList.get(1).free();
+        owned.add(factor);
 
-        List<LinkedHashMap<String, Double>> newCptList = new ArrayList<>();
+        List<Factor> newCptList = new ArrayList<>();
         for (int i = 2; i < cptList.size(); i++) {
             newCptList.add(cptList.get(i));
         }
 
-        return integrateFactors(newCptList, factor, counter);
+        return integrateFactors(newCptList, factor, owned, counter);
     }
 
     /**
@@ -109,286 +67,830 @@ public class CPT {
      * @param Y the second factor
      * @return new factor of X and Y combined
      */
-    public static LinkedHashMap<String, Double> integrateTwoFactors(LinkedHashMap<String, Double> X, LinkedHashMap<String, Double> Y, Counter counter) {
+    public static Factor integrateTwoFactors(Factor X, Factor Y, Counter counter) {
 
-//        System.out.println("X:");
-//        System.out.println(Utils.hashMapToString(X));
-//        System.out.println("Y:");
-//        System.out.println(Utils.hashMapToString(Y));
+        // The variables of X followed by the variables only Y includes
+        List<Variable> names = new ArrayList<>(Arrays.asList(X.getScope()));
+        for (Variable variable : Y.getScope()) {
+            if (!X.contains(variable)) names.add(variable);
+        }
+        Variable[] scope = names.toArray(new Variable[0]);
+
+        if (X.isSparse() || Y.isSparse()) return integrateSparse(X, Y, scope, counter);
+
+        // The strides of X and Y for each variable of the new factor (0 if the factor doesn't include it)
+        int[] xStrides = new int[scope.length];
+        int[] yStrides = new int[scope.length];
+        for (int i = 0; i < scope.length; i++) {
+            int x = X.positionOf(scope[i]);
+            int y = Y.positionOf(scope[i]);
+            xStrides[i] = x >= 0 ? X.getStride(x) : 0;
+            yStrides[i] = y >= 0 ? Y.getStride(y) : 0;
+        }
 
-        HashMap<String, List<String>> xOutcomes = getNamesAndOutcomes(X);
-        HashMap<String, List<String>> yOutcomes = getNamesAndOutcomes(Y);
+        // Integrating a factor into result
+        Factor result = Factor.allocate(scope);
+        int size = result.size();
+        fill(result, (from, to, out, shift) -> multiply(X, Y, xStrides, yStrides, result, from, to, out, shift));
 
-        Set<String> xNamesSet = xOutcomes.keySet();
-        List<String> xNames = new ArrayList<>(xNamesSet);
-        Set<String> yNamesSet = yOutcomes.keySet();
-        List<String> yNames = new ArrayList<>(yNamesSet);
+        counter.multiAdd(size);
+        counter.factorAdd(size);
 
-        // Getting the names of the variables that the factor will include
-        List<String> xyNamesIntersection = Utils.intersection(xNames, yNames);
-//        System.out.println("Intersection: " + xyNamesIntersection);
+        return result;
+    }
 
-        // Integrating a factor into result
-        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+    /**
+     * Computing the entries from (inclusive) to (exclusive) of the product of two factors
+     *
+     * @param X        the first factor
+     * @param Y        the second factor
+     * @param xStrides the strides of X for each variable of the result
+     * @param yStrides the strides of Y for each variable of the result
+     * @param result   the product
+     * @param out      the array the entry index is written to at index - shift
+     */
+    private static void multiply(Factor X, Factor Y, int[] xStrides, int[] yStrides, Factor result,
+                                 int from, int to, double[] out, int shift) {
+        int n = result.getScopeSize();
+
+        // Decoding the first entry into the assignment and the positions of X and Y
+        int[] assignment = new int[n];
+        int xIndex = X.getOffset();
+        int yIndex = Y.getOffset();
+        int rest = from;
+        for (int i = n - 1; i >= 0; i--) {
+            assignment[i] = rest % result.getCardinality(i);
+            rest /= result.getCardinality(i);
+            xIndex += assignment[i] * xStrides[i];
+            yIndex += assignment[i] * yStrides[i];
+        }
 
-        for (Map.Entry<String, Double> y : Y.entrySet()) {
-            LinkedHashMap<String, String> valuesOfLine = Utils.splitKeys(y.getKey());
-            List<String> intersectionVariablesValues = new ArrayList<>();
+        // Walking the assignments of the new factor once like an odometer,
+        // the last variable changes the fastest
+        for (int index = from; index < to; index++) {
+            out[index - shift] = X.getValueAt(xIndex) * Y.getValueAt(yIndex);
 
-            for (String name : xyNamesIntersection) {
-                intersectionVariablesValues.add(name + "=" + valuesOfLine.get(name));
+            for (int i = n - 1; i >= 0; i--) {
+                if (++assignment[i] < result.getCardinality(i)) {
+                    xIndex += xStrides[i];
+                    yIndex += yStrides[i];
+                    break;
+                }
+                // Rolling the outcome back to the first one and carrying to the next variable
+                assignment[i] = 0;
+                xIndex -= (result.getCardinality(i) - 1) * xStrides[i];
+                yIndex -= (result.getCardinality(i) - 1) * yStrides[i];
             }
-            for (Map.Entry<String, Double> x : X.entrySet()) {
-                boolean b = true;
+        }
+    }
 
-                for (String name : intersectionVariablesValues) {
-                    if (!x.getKey().contains(name)) {
-                        b = false;
-                        break;
-                    }
-                }
-                if (b) {
+    /**
+     * The kernel computing the entries from (inclusive) to (exclusive) of a factor,
+     * the entry index is written to out[index - shift]
+     */
+    private interface Block {
+        void apply(int from, int to, double[] out, int shift);
+    }
 
-                    double u = y.getValue();
-                    double v = x.getValue();
-                    double r = u * v;
+    /**
+     * The number of entries of an off-heap factor computed into an array before they are copied to the factor
+     */
+    private static final int BLOCK_SIZE = 1 << 13;
 
-                    String[] ySplit = y.getKey().split(",");
-                    List<String> ySplitList = new ArrayList<>();
-                    Collections.addAll(ySplitList, ySplit);
+    /**
+     * Computing every entry of the result, in parallel if it is large,
+     * and through a small array if the result isn't on the heap
+     *
+     * @param result the factor to write
+     * @param block  the kernel
+     */
+    private static void fill(Factor result, Block block) {
+        ParallelKernels.forEach(result.size(), (from, to) -> {
+            if (result.isOnHeap()) {
+                block.apply(from, to, result.getValues(), 0);
+                return;
+            }
+            double[] out = new double[Math.min(BLOCK_SIZE, to - from)];
+            for (int start = from; start < to; start += out.length) {
+                int end = Math.min(to, start + out.length);
+                block.apply(start, end, out, start);
+                result.getStorage().write(start, out, 0, end - start);
+            }
+        });
+    }
 
-                    String[] xSplit = x.getKey().split(",");
-                    List<String> xSplitList = new ArrayList<>();
-                    Collections.addAll(xSplitList, xSplit);
+    /**
+     * Eliminating variables from the given factor
+     *
+     * @param factor    the given factor
+     * @param variables the variable
+     * @return the new factor eliminated from the variables
+     */
+    public static Factor eliminate(Factor factor, Variable variables, Counter counter) {
+        return eliminate(factor, new Variable[]{variables}, counter);
+    }
 
-                    List<String> newKeySplit = Utils.union(xSplitList, ySplitList);
-                    Collections.sort(newKeySplit);
-                    String new_key = Utils.combineWithCommas(newKeySplit);
-                    result.put(new_key, r);
+    /**
+     * Eliminating several variables from the given factor at once
+     *
+     * @param factor    the given factor
+     * @param variables the variables to sum out
+     * @return the new factor eliminated from the variables
+     */
+    public static Factor eliminate(Factor factor, Variable[] variables, Counter counter) {
+
+        // Building the scope without the variables
+        List<Variable> names = new ArrayList<>();
+        for (Variable variable : factor.getScope()) {
+            boolean eliminated = false;
+            for (Variable v : variables) {
+                if (v.getId() == variable.getId()) {
+                    eliminated = true;
+                    break;
                 }
             }
+            if (!eliminated) names.add(variable);
         }
 
-//        System.out.println("After join: ");
-//        System.out.println(Utils.hashMapToString(result));
-//        System.out.println();
+        if (names.size() == factor.getScopeSize()) return factor;
 
-        counter.multiAdd(result.size());
+        if (factor.isSparse()) return eliminateSparse(factor, names.toArray(new Variable[0]), counter);
 
+        Factor result = Factor.allocate(names.toArray(new Variable[0]));
+        sumOut(factor, result, counter);
+        counter.factorAdd(result.size());
         return result;
     }
 
     /**
-     * Getting names and outcomes
+     * Multiplying factors and summing out variables in one pass, so the product itself is never built
+     * Each entry of the result adds, for each assignment of the summed out variables,
+     * the product of the values of the factors in their order
      *
-     * @param cpt
-     * @return outcomes
+     * @param factors   the factors to multiply
+     * @param variables the variables to sum out
+     * @return the new factor over the other variables of the factors
      */
-    public static LinkedHashMap<String, List<String>> getNamesAndOutcomes(LinkedHashMap<String, Double> cpt) {
+    public static Factor multiplyAndEliminate(List<Factor> factors, Variable[] variables, Counter counter) {
+
+        // The variables which are kept in the order they appear in the factors, and the variables summed out
+        List<Variable> kept = new ArrayList<>();
+        List<Variable> summed = new ArrayList<>();
+        for (Factor factor : factors) {
+            for (Variable variable : factor.getScope()) {
+                boolean eliminated = false;
+                for (Variable v : variables) {
+                    if (v.getId() == variable.getId()) {
+                        eliminated = true;
+                        break;
+                    }
+                }
+                List<Variable> list = eliminated ? summed : kept;
+                if (!list.contains(variable)) list.add(variable);
+            }
+        }
+        Variable[] scope = kept.toArray(new Variable[0]);
+
+        // The strides of each factor for the kept and the summed out variables (0 if the factor doesn't include it)
+        int k = factors.size();
+        int m = summed.size();
+        Factor[] sources = factors.toArray(new Factor[0]);
+        int[][] keptStrides = new int[k][scope.length];
+        int[][] summedStrides = new int[k][m];
+        int[] summedCardinalities = new int[m];
+        int summedSize = Factor.size(summed.toArray(new Variable[0]));
+        for (int i = 0; i < m; i++) {
+            summedCardinalities[i] = summed.get(i).getCardinality();
+        }
+        for (int j = 0; j < k; j++) {
+            for (int i = 0; i < scope.length; i++) {
+                int position = sources[j].positionOf(scope[i]);
+                keptStrides[j][i] = position >= 0 ? sources[j].getStride(position) : 0;
+            }
+            for (int i = 0; i < m; i++) {
+                int position = sources[j].positionOf(summed.get(i));
+                summedStrides[j][i] = position >= 0 ? sources[j].getStride(position) : 0;
+            }
+        }
 
-        LinkedHashMap<String, List<String>> outcomes = new LinkedHashMap<>();
+        Factor result = Factor.allocate(scope);
+        int inner = summedSize;
+        fill(result, (from, to, out, shift) -> {
+            int n = scope.length;
+
+            // Decoding the first entry into the assignment of result and the positions of the factors
+            int[] assignment = new int[n];
+            int[] positions = new int[k];
+            for (int j = 0; j < k; j++) positions[j] = sources[j].getOffset();
+            int rest = from;
+            for (int i = n - 1; i >= 0; i--) {
+                assignment[i] = rest % result.getCardinality(i);
+                rest /= result.getCardinality(i);
+                for (int j = 0; j < k; j++) positions[j] += assignment[i] * keptStrides[j][i];
+            }
+
+            int[] summedAssignment = new int[m];
+            int[] current = new int[k];
+            for (int index = from; index < to; index++) {
+                double sum = 0;
+                if (k == 2 && m == 1) {
+                    // Two factors and one variable, the usual case of a bucket
+                    int x = positions[0];
+                    int y = positions[1];
+                    for (int s = 0; s < inner; s++, x += summedStrides[0][0], y += summedStrides[1][0]) {
+                        sum += sources[0].getValueAt(x) * sources[1].getValueAt(y);
+                    }
+                } else {
+                    System.arraycopy(positions, 0, current, 0, k);
+                    for (int s = 0; s < inner; s++) {
+                        double product = sources[0].getValueAt(current[0]);
+                        for (int j = 1; j < k; j++) product *= sources[j].getValueAt(current[j]);
+                        sum += product;
+
+                        for (int i = m - 1; i >= 0; i--) {
+                            if (++summedAssignment[i] < summedCardinalities[i]) {
+                                for (int j = 0; j < k; j++) current[j] += summedStrides[j][i];
+                                break;
+                            }
+                            summedAssignment[i] = 0;
+                            for (int j = 0; j < k; j++) current[j] -= (summedCardinalities[i] - 1) * summedStrides[j][i];
+                        }
+                    }
+                }
+                out[index - shift] = sum;
 
-        List<String> names = new ArrayList<>();
-        for (Map.Entry<String, Double> line : cpt.entrySet()) {
-            LinkedHashMap<String, String> lineSplit = Utils.splitKeys(line.getKey());
-            for (Map.Entry<String, String> inner : lineSplit.entrySet()) {
-                names.add(inner.getKey());
+                for (int i = n - 1; i >= 0; i--) {
+                    if (++assignment[i] < result.getCardinality(i)) {
+                        for (int j = 0; j < k; j++) positions[j] += keptStrides[j][i];
+                        break;
+                    }
+                    assignment[i] = 0;
+                    for (int j = 0; j < k; j++) positions[j] -= (result.getCardinality(i) - 1) * keptStrides[j][i];
+                }
             }
-            break;
+        });
+
+        counter.multiAdd((long) (k - 1) * summedSize * result.size());
+        counter.sumAdd((long) (summedSize - 1) * result.size());
+        counter.factorAdd(result.size());
+
+        return result;
+    }
+
+    /**
+     * Summing the given factor into a preallocated factor over a subset of its scope
+     * The values of the source are read once in order, or by the entries of the result
+     * if the result is large enough to run in parallel or isn't on the heap, or the source is a view
+     *
+     * @param factor the given factor
+     * @param result the factor to add the sums to, its scope must be included in the scope of the given factor
+     */
+    public static void sumOut(Factor factor, Factor result, Counter counter) {
+
+        int n = factor.getScopeSize();
+        int size = factor.size();
+
+        if (!result.isOnHeap() || factor.isView() || ParallelKernels.isParallel(result.size())) {
+            sumOutByResult(factor, result);
+            counter.sumAdd(size - result.size());
+            return;
         }
 
-        for (String name : names) {
-            outcomes.put(name, new ArrayList<>());
+        double[] values = result.getValues();
+
+        // The strides of result for each variable of the given factor (0 if it is summed out)
+        int[] resultStrides = new int[n];
+        for (int i = 0; i < n; i++) {
+            int position = result.positionOf(factor.getId(i));
+            resultStrides[i] = position >= 0 ? result.getStride(position) : 0;
         }
 
-        for (Map.Entry<String, Double> line : cpt.entrySet()) {
-            LinkedHashMap<String, String> lineSplit = Utils.splitKeys(line.getKey());
-            for (Map.Entry<String, String> inner : lineSplit.entrySet()) {
-                if (!outcomes.get(inner.getKey()).contains(inner.getValue())) {
-                    outcomes.get(inner.getKey()).add(inner.getValue());
+        int[] assignment = new int[n];
+        int resultIndex = 0;
+
+        for (int index = 0; index < size; index++) {
+            values[resultIndex] += factor.getValueAt(index);
+
+            for (int i = n - 1; i >= 0; i--) {
+                if (++assignment[i] < factor.getCardinality(i)) {
+                    resultIndex += resultStrides[i];
+                    break;
                 }
+                assignment[i] = 0;
+                resultIndex -= (factor.getCardinality(i) - 1) * resultStrides[i];
             }
         }
-        return outcomes;
+
+        counter.sumAdd(size - values.length);
     }
 
     /**
-     * Getting names of variables
+     * Summing the given factor by the entries of the result, in parallel if the result is large
+     * Each entry adds the values of the source in the same order as the single pass,
+     * so the sums are the same whatever the chunks are
+     * The sums are accumulated in double, so an entry of a float result is rounded only once
      *
-     * @param factor
-     * @return names
+     * @param factor the given factor
+     * @param result the factor to add the sums to
      */
-    public static List<String> getNames(LinkedHashMap<String, Double> factor) {
-        List<String> names = new ArrayList<>();
-        LinkedHashMap<String, List<String>> namesAndOutcomes = getNamesAndOutcomes(factor);
-        for (Map.Entry<String, List<String>> entry : namesAndOutcomes.entrySet()) {
-            names.add(entry.getKey());
+    private static void sumOutByResult(Factor factor, Factor result) {
+
+        // The strides of the given factor for each variable of result
+        int[] keptStrides = new int[result.getScopeSize()];
+        for (int i = 0; i < keptStrides.length; i++) {
+            keptStrides[i] = factor.getStride(factor.positionOf(result.getId(i)));
+        }
+
+        // The cardinalities and the strides of the summed out variables in the order of the given factor
+        int m = factor.getScopeSize() - result.getScopeSize();
+        int[] summedCardinalities = new int[m];
+        int[] summedStrides = new int[m];
+        for (int i = 0, j = 0; i < factor.getScopeSize(); i++) {
+            if (!result.contains(factor.getId(i))) {
+                summedCardinalities[j] = factor.getCardinality(i);
+                summedStrides[j++] = factor.getStride(i);
+            }
         }
-        return names;
+
+        int summedSize = factor.size() / result.size();
+
+        fill(result, (from, to, out, shift) -> {
+            int[] assignment = new int[m];
+
+            // Decoding the first entry into the assignment of result and the first entry of the source summed into it
+            int n = keptStrides.length;
+            int[] kept = new int[n];
+            int base = factor.getOffset();
+            int rest = from;
+            for (int i = n - 1; i >= 0; i--) {
+                kept[i] = rest % result.getCardinality(i);
+                rest /= result.getCardinality(i);
+                base += kept[i] * keptStrides[i];
+            }
+
+            for (int index = from; index < to; index++) {
+                double sum = result.getValue(index);
+                int sourceIndex = base;
+                for (int k = 0; k < summedSize; k++) {
+                    sum += factor.getValueAt(sourceIndex);
+
+                    for (int i = m - 1; i >= 0; i--) {
+                        if (++assignment[i] < summedCardinalities[i]) {
+                            sourceIndex += summedStrides[i];
+                            break;
+                        }
+                        assignment[i] = 0;
+                        sourceIndex -= (summedCardinalities[i] - 1) * summedStrides[i];
+                    }
+                }
+                out[index - shift] = sum;
+
+                // Moving to the next entry of result like an odometer
+                for (int i = n - 1; i >= 0; i--) {
+                    if (++kept[i] < result.getCardinality(i)) {
+                        base += keptStrides[i];
+                        break;
+                    }
+                    kept[i] = 0;
+                    base -= (result.getCardinality(i) - 1) * keptStrides[i];
+                }
+            }
+        });
     }
 
     /**
-     * Eliminating variables from the given factor
+     * Sorting factors from the smallest to the biggest
      *
-     * @param factor    the given factor
-     * @param variables the variable
-     * @return the new factor eliminated from the variables
+     * @param factors
+     * @return sorted factors
+     */
+    public static List<Factor> sortFactors(List<Factor> factors) {
+
+        List<Factor> sortedFactors = new ArrayList<>(factors);
+        sortedFactors.sort(CPT::compareCPT);
+        return sortedFactors;
+    }
+
+    /**
+     * Comparing factors by size and then by the ids of their variables
+     *
+     * @param X first factor
+     * @param Y second factor
+     * @return negative, zero or positive if X comes before, with or after Y
      */
-    public static LinkedHashMap<String, Double> eliminate(LinkedHashMap<String, Double> factor, Variable variables, Counter counter) {
+    private static int compareCPT(Factor X, Factor Y) {
+        if (X.size() != Y.size()) {
+            return Integer.compare(X.size(), Y.size());
+        }
+        return Integer.compare(idSum(X), idSum(Y));
+    }
+
+    /**
+     * @param factor
+     * @return the sum of the ids of the variables of the factor
+     */
+    private static int idSum(Factor factor) {
+        int sum = 0;
+        for (int i = 0; i < factor.getScopeSize(); i++) {
+            sum += factor.getId(i);
+        }
+        return sum;
+    }
 
-        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+    /**
+     * Restricting the factor to the evidence
+     * The evidence variables are removed from the scope, and the result is a view reading the values of the factor
+     * from the first row matching every evidence with the strides of the other variables, so nothing is copied
+     * and the work depends only on the number of variables
+     * A sparse factor keeps its non-zero entries matching the evidence instead
+     *
+     * @param evidence the evidence resolved to ids and outcome indices
+     * @param factor   the factor we eliminate the evidence values
+     * @return result
+     */
+    public static Factor updateCPT(Evidence evidence, Factor factor) {
 
-        List<String> names = getNames(factor);
+        int n = factor.getScopeSize();
+        int[] positions = new int[n];
+        int kept = 0;
 
-        if (names.size() <= 1) return result;
+        // The position of the first row matching every evidence
+        int offset = 0;
 
-        // Building list with all the outcomes
-        List<String> outcomes = variables.getOutcomes();
-        List<String> values = new ArrayList<>();
-        for (String outcome : outcomes) {
-            values.add(variables.getName() + "=" + outcome);
+        for (int i = 0; i < n; i++) {
+            int id = factor.getId(i);
+            if (evidence.contains(id)) {
+                offset += evidence.getValue(id) * factor.getStride(i);
+            } else {
+                positions[kept++] = i;
+            }
         }
 
-        for (Map.Entry<String, Double> y : factor.entrySet()) {
-            for (String value : values) {
-                if (y.getKey().contains(value)) {
+        if (kept == n) return factor;
 
-                    // Building the new key without the value
-                    List<String> splitNewKey = new ArrayList<>(Arrays.asList(y.getKey().split(",")));
-                    splitNewKey.remove(value);
-                    String new_key = Utils.combineWithCommas(splitNewKey);
+        positions = Arrays.copyOf(positions, kept);
+        if (factor.isSparse()) {
+            Variable[] scope = new Variable[kept];
+            for (int i = 0; i < kept; i++) scope[i] = factor.getScope()[positions[i]];
+            return updateSparse(evidence, factor, scope, offset);
+        }
 
-                    for (Map.Entry<String, Double> x : factor.entrySet()) {
+        return factor.restrict(positions, offset);
+    }
 
-                        boolean b = true;
-                        List<String> newKeyValues = Utils.separateByCommas(new_key);
-                        for (String newKeyValue : newKeyValues) {
-                            if (!x.getKey().contains(newKeyValue)) {
-                                b = false;
-                                break;
-                            }
-                        }
+    /**
+     * Multiplying two factors when at least one of them is sparse
+     * Only the non-zero entries of the sparser factor are visited, and the products which are zero are skipped
+     *
+     * @param X     the first factor
+     * @param Y     the second factor
+     * @param scope the variables of X followed by the variables only Y includes
+     * @return new factor of X and Y combined
+     */
+    private static Factor integrateSparse(Factor X, Factor Y, Variable[] scope, Counter counter) {
+
+        // The sparse factor with fewer non-zero entries drives the product
+        Factor driver = !X.isSparse() || (Y.isSparse() && Y.getDensity() < X.getDensity()) ? Y : X;
+        Factor other = driver == X ? Y : X;
+        SparseStorage sparse = (SparseStorage) driver.getStorage();
+        int[] resultStrides = strides(scope);
+
+        // The strides of the result and the other factor for each variable of the driver
+        int n = driver.getScopeSize();
+        int[] driverResultStrides = new int[n];
+        int[] driverOtherStrides = new int[n];
+        for (int i = 0; i < n; i++) {
+            driverResultStrides[i] = resultStrides[indexOf(scope, driver.getId(i))];
+            int position = other.positionOf(driver.getId(i));
+            driverOtherStrides[i] = position >= 0 ? other.getStride(position) : 0;
+        }
 
-                        if (x.getKey().equals(y.getKey())) {
-                            b = false;
-                        }
+        // The variables of the result the driver doesn't include, they all belong to the other factor
+        int m = scope.length - n;
+        int[] freeCardinalities = new int[m];
+        int[] freeResultStrides = new int[m];
+        int[] freeOtherStrides = new int[m];
+        int freeSize = 1;
+        for (int i = 0, j = 0; i < scope.length; i++) {
+            if (!driver.contains(scope[i])) {
+                freeCardinalities[j] = scope[i].getCardinality();
+                freeResultStrides[j] = resultStrides[i];
+                freeOtherStrides[j++] = other.getStride(other.positionOf(scope[i]));
+                freeSize *= scope[i].getCardinality();
+            }
+        }
 
-                        if (b) {
-                            double u = y.getValue();
-                            double v = x.getValue();
-                            double r = u + v;
+        // A sparse factor read more often than it has entries is expanded once instead of being searched each time
+        double[] otherValues = other.isOnHeap() ? other.getValues() : null;
+        if (other.isSparse() && (long) sparse.nonZeros() * freeSize >= other.size()) {
+            otherValues = ((SparseStorage) other.getStorage()).toArray();
+        }
 
-                            if (!result.containsKey(new_key)) {
-                                counter.sumAdd(1);
-                                result.put(new_key, r);
-                            }
-                        }
+        Entries entries = new Entries(sparse.nonZeros());
+        Odometer odometer = new Odometer(driver, driverResultStrides, driverOtherStrides);
+        int[] assignment = new int[m];
+        for (int k = 0; k < sparse.nonZeros(); k++) {
+
+            // The first entries of the result and the other factor for the entry of the driver
+            odometer.moveTo(sparse.indexAt(k));
+            int resultIndex = odometer.first;
+            int otherIndex = other.getOffset() + odometer.second;
+
+            double value = sparse.valueAt(k);
+            for (int j = 0; j < freeSize; j++) {
+                double otherValue = otherValues != null ? otherValues[otherIndex] : other.getValueAt(otherIndex);
+                if (otherValue != 0) entries.add(resultIndex, value * otherValue);
+
+                for (int i = m - 1; i >= 0; i--) {
+                    if (++assignment[i] < freeCardinalities[i]) {
+                        resultIndex += freeResultStrides[i];
+                        otherIndex += freeOtherStrides[i];
+                        break;
                     }
+                    assignment[i] = 0;
+                    resultIndex -= (freeCardinalities[i] - 1) * freeResultStrides[i];
+                    otherIndex -= (freeCardinalities[i] - 1) * freeOtherStrides[i];
                 }
             }
         }
 
+        counter.multiAdd(entries.count);
+
+        Factor result = entries.toFactor(scope);
+        counter.factorAdd(result.size());
         return result;
     }
 
     /**
-     * Sorting factors from the smallest to the biggest
+     * Summing out variables of a sparse factor by visiting its non-zero entries only
+     * The entries of each sum are added in the order of the source like the dense kernels, so the sums are the same
      *
-     * @param factors
-     * @return sorted factors
+     * @param factor the sparse factor
+     * @param scope  the variables which are kept
+     * @return the new factor eliminated from the other variables
      */
-    public static List<LinkedHashMap<String, Double>> sortFactors(List<LinkedHashMap<String, Double>> factors) {
+    private static Factor eliminateSparse(Factor factor, Variable[] scope, Counter counter) {
 
-        ArrayList<LinkedHashMap<String, Double>> sortedFactors = new ArrayList<>();
-        for (int i = 0; i < factors.size(); i++) {
-            sortedFactors.add(i,factors.get(i));
+        SparseStorage sparse = (SparseStorage) factor.getStorage();
+        int[] resultStrides = strides(scope);
+
+        // The strides of result for each variable of the given factor (0 if it is summed out)
+        int n = factor.getScopeSize();
+        int[] strides = new int[n];
+        for (int i = 0; i < n; i++) {
+            int position = indexOf(scope, factor.getId(i));
+            strides[i] = position >= 0 ? resultStrides[position] : 0;
         }
 
-        // Sorting by bubble sort algorithm
-        for (int i = 0; i < sortedFactors.size(); i++) {
-            for (int j = 0; j < sortedFactors.size() - 1; j++) {
-                if (compareCPT(sortedFactors.get(j), sortedFactors.get(j + 1))) {
-                    // Exchange factors
-                    LinkedHashMap<String, Double> temp = sortedFactors.get(j);
-                    sortedFactors.set(j,sortedFactors.get(j+1));
-                    sortedFactors.set(j + 1,temp);
+        Entries entries = new Entries(sparse.nonZeros());
+        Odometer odometer = new Odometer(factor, strides, new int[n]);
+        for (int k = 0; k < sparse.nonZeros(); k++) {
+            odometer.moveTo(sparse.indexAt(k));
+            entries.add(odometer.first, sparse.valueAt(k));
+        }
 
-                }
-            }
+        Factor result = entries.toFactor(scope);
+        counter.sumAdd(entries.additions);
+        counter.factorAdd(result.size());
+        return result;
+    }
+
+    /**
+     * Keeping the non-zero entries of a sparse factor which match the evidence
+     *
+     * @param evidence the evidence resolved to ids and outcome indices
+     * @param factor   the sparse factor
+     * @param scope    the variables of the factor which are not evidence
+     * @param offset   the index of the first entry matching every evidence
+     * @return result
+     */
+    private static Factor updateSparse(Evidence evidence, Factor factor, Variable[] scope, int offset) {
+
+        SparseStorage sparse = (SparseStorage) factor.getStorage();
+        int[] resultStrides = strides(scope);
+
+        // The strides of result for each variable of the given factor (0 for the evidence),
+        // and the strides of the given factor for the evidence, an entry matches the evidence if they add up to offset
+        int n = factor.getScopeSize();
+        int[] strides = new int[n];
+        int[] evidenceStrides = new int[n];
+        for (int i = 0; i < n; i++) {
+            int position = indexOf(scope, factor.getId(i));
+            strides[i] = position >= 0 ? resultStrides[position] : 0;
+            evidenceStrides[i] = evidence.contains(factor.getId(i)) ? factor.getStride(i) : 0;
         }
 
-        return sortedFactors;
+        // Removing the outcomes of the evidence keeps the order of the entries
+        Entries entries = new Entries(0);
+        Odometer odometer = new Odometer(factor, strides, evidenceStrides);
+        for (int k = 0; k < sparse.nonZeros(); k++) {
+            odometer.moveTo(sparse.indexAt(k));
+            if (odometer.second == offset) entries.add(odometer.first, sparse.valueAt(k));
+        }
+
+        return entries.toFactor(scope);
     }
 
     /**
-     * @param X first factor
-     * @param Y second factor
-     * @return true or false if we want to swap between X and Y
+     * @param scope the ordered variables of a factor
+     * @return the strides of the variables, the last variable changes the fastest
      */
-    private static boolean compareCPT(LinkedHashMap<String, Double> X, LinkedHashMap<String, Double> Y) {
-        if (X.size() < Y.size()) {
-            return false;
-        } else if (X.size() > Y.size()) {
-            return true;
-        } else {
-            // compare by ASCII values
-            List<String> xNamesList = getNames(X);
-            List<String> yNamesList = getNames(Y);
-
-            int xNamesAscii = 0;
-            for (String name : xNamesList) {
-                for (int i = 0; i < name.length(); i++) {
-                    xNamesAscii += name.charAt(i);
-                }
-            }
-            int yNamesAscii = 0;
-            for (String name : yNamesList) {
-                for (int i = 0; i < name.length(); i++) {
-                    yNamesAscii += name.charAt(i);
+    private static int[] strides(Variable[] scope) {
+        int[] strides = new int[scope.length];
+        int stride = 1;
+        for (int i = scope.length - 1; i >= 0; i--) {
+            strides[i] = stride;
+            stride *= scope[i].getCardinality();
+        }
+        return strides;
+    }
+
+    /**
+     * @param scope the ordered variables of a factor
+     * @param id    id of the variable
+     * @return the position of the variable in the scope or -1
+     */
+    private static int indexOf(Variable[] scope, int id) {
+        for (int i = 0; i < scope.length; i++) {
+            if (scope[i].getId() == id) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The assignment of a factor moved forward to the indices of its non-zero entries,
+     * keeping the indices of the assignment in two other factors up to date
+     */
+    private static final class Odometer {
+        private final Factor factor;
+        private final int[] assignment;
+        private final int[] firstStrides;
+        private final int[] secondStrides;
+        private int index;
+        private int first;
+        private int second;
+
+        /**
+         * @param factor        the factor the assignment belongs to
+         * @param firstStrides  the strides of the first other factor for each variable of the factor
+         * @param secondStrides the strides of the second other factor for each variable of the factor
+         */
+        private Odometer(Factor factor, int[] firstStrides, int[] secondStrides) {
+            this.factor = factor;
+            this.assignment = new int[factor.getScopeSize()];
+            this.firstStrides = firstStrides;
+            this.secondStrides = secondStrides;
+        }
+
+        /**
+         * Moving to an entry of the factor, the outcomes carry to the next variables only when they overflow
+         *
+         * @param index the index of the entry, not before the current one
+         */
+        private void moveTo(int index) {
+            int delta = index - this.index;
+            this.index = index;
+            for (int i = this.assignment.length - 1; i >= 0 && delta > 0; i--) {
+                int cardinality = this.factor.getCardinality(i);
+                int outcome = this.assignment[i] + delta;
+                delta = 0;
+                if (outcome >= cardinality) {
+                    delta = outcome / cardinality;
+                    outcome -= delta * cardinality;
                 }
+                int change = outcome - this.assignment[i];
+                this.first += change * this.firstStrides[i];
+                this.second += change * this.secondStrides[i];
+                this.assignment[i] = outcome;
             }
-            return xNamesAscii >= yNamesAscii;
         }
     }
 
     /**
-     * Deleting the unrequited values by evidence and return the new factor
-     *
-     * @param evidenceList list of the evidence variable
-     * @param valueList    list of the values of the evidence variables
-     * @param factor       the factor we eliminate the evidence values
-     * @return result
+     * The non-zero entries of a factor being built by a sparse kernel
      */
-    public static LinkedHashMap<String, Double> updateCPT(List<String> evidenceList, List<String> valueList, LinkedHashMap<String, Double> factor) {
+    private static final class Entries {
 
-        List<String> variablesNames = CPT.getNames(factor);
-        List<String> evidenceVariables = Utils.intersection(variablesNames, evidenceList);
+        /**
+         * The entries are scattered into a dense array if the factor has at most this many entries for each of them
+         */
+        private static final int SCATTER_RATIO = 8;
 
-        List<String> evidences = new ArrayList<>();
-        List<String> values = new ArrayList<>();
+        private int[] indices;
+        private double[] values;
+        private int count;
+        private int additions;
 
-        for (int i = 0; i < evidenceList.size(); i++) {
-            String name = evidenceList.get(i);
-            if (evidenceVariables.contains(name)) {
-                evidences.add(evidenceList.get(i));
-                values.add(valueList.get(i));
+        private Entries(int capacity) {
+            this.indices = new int[Math.max(capacity, 16)];
+            this.values = new double[this.indices.length];
+        }
+
+        private void add(int index, double value) {
+            if (this.count == this.indices.length) {
+                int capacity = this.count + (this.count >> 1);
+                this.indices = Arrays.copyOf(this.indices, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
             }
+            this.indices[this.count] = index;
+            this.values[this.count++] = value;
         }
 
-        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+        /**
+         * Building the factor of the entries, the entries of the same index are added up in the order they were added
+         * The entries are merged where they are if they are in order, scattered into a dense array
+         * if they fill enough of the factor, and sorted otherwise
+         *
+         * @param scope the ordered variables of the factor
+         * @return factor, sparse if it has few enough non-zero entries and dense otherwise
+         */
+        private Factor toFactor(Variable[] scope) {
+            int size = Factor.size(scope);
+            int added = this.count;
+
+            boolean ordered = true;
+            for (int k = 1; k < this.count && ordered; k++) {
+                ordered = this.indices[k - 1] <= this.indices[k];
+            }
+
+            if (!ordered && size / SCATTER_RATIO <= this.count) {
+                double[] dense = new double[size];
+                for (int k = 0; k < this.count; k++) dense[this.indices[k]] += this.values[k];
+                int nonZeros = 0;
+                for (double value : dense) {
+                    if (value != 0) nonZeros++;
+                }
+                this.additions = added - nonZeros;
+                if (!SparseStorage.isSparse(nonZeros, size)) return Factor.of(scope, dense);
+
+                this.count = 0;
+                for (int index = 0; index < size; index++) {
+                    if (dense[index] != 0) {
+                        this.indices[this.count] = index;
+                        this.values[this.count++] = dense[index];
+                    }
+                }
+                return new Factor(scope, new SparseStorage(size, this.indices, this.values, this.count));
+            }
+
+            if (!ordered) sort();
+            merge();
+            this.additions = added - this.count;
 
-        for (Map.Entry<String, Double> entry : factor.entrySet()) {
-            boolean b = true;
-            for (int i = 0; i < evidences.size(); i++) {
-                StringBuilder evidenceValue = new StringBuilder();
-                evidenceValue.append(evidences.get(i)).append("=").append(values.get(i));
-                b &= entry.getKey().contains(evidenceValue);
+            if (SparseStorage.isSparse(this.count, size)) {
+                return new Factor(scope, new SparseStorage(size, this.indices, this.values, this.count));
             }
-            if (b) {
-                result.put(entry.getKey(), entry.getValue());
+
+            Factor result = Factor.allocate(scope);
+            if (result.isOnHeap()) {
+                double[] values = result.getValues();
+                for (int k = 0; k < this.count; k++) values[this.indices[k]] = this.values[k];
+                return result;
             }
+
+            // Writing the entries block by block to a factor which isn't on the heap
+            double[] out = new double[Math.min(BLOCK_SIZE, size)];
+            int k = 0;
+            for (int start = 0; start < size; start += out.length) {
+                int end = Math.min(size, start + out.length);
+                Arrays.fill(out, 0.0);
+                for (; k < this.count && this.indices[k] < end; k++) out[this.indices[k] - start] = this.values[k];
+                result.getStorage().write(start, out, 0, end - start);
+            }
+            return result;
         }
 
-        return result;
+        /**
+         * Sorting the entries by index, the entries of the same index keep their order
+         */
+        private void sort() {
+            // The index in the high bits and the position in the low bits
+            long[] keys = new long[this.count];
+            for (int k = 0; k < this.count; k++) {
+                keys[k] = (long) this.indices[k] << 32 | k;
+            }
+            Arrays.sort(keys);
+            double[] values = Arrays.copyOf(this.values, this.count);
+            for (int k = 0; k < this.count; k++) {
+                this.indices[k] = (int) (keys[k] >>> 32);
+                this.values[k] = values[(int) keys[k]];
+            }
+        }
+
+        /**
+         * Adding up the sorted entries of the same index
+         */
+        private void merge() {
+            int merged = 0;
+            for (int k = 0; k < this.count; k++) {
+                if (merged > 0 && this.indices[merged - 1] == this.indices[k]) {
+                    this.values[merged - 1] += this.values[k];
+                } else {
+                    this.indices[merged] = this.indices[k];
+                    this.values[merged++] = this.values[k];
+                }
+            }
+            this.count = merged;
+        }
     }
 }
@@ -0,0 +1,141 @@
+import java.util.*;
+
+/**
+ * The class for an immutable snapshot of BNs which can answer queries from many threads at once
+ * The variables and CPTs are copied when compiling and never exposed, so changing the original BN
+ * doesn't affect the snapshot and no query can change the CPTs used by another query
+ */
+public final class CompiledNetwork implements InferenceEngine {
+
+    private final BN bn;
+
+    private final SymbolTable symbols;
+
+    private final EliminationOrder.Heuristic heuristic;
+
+    private CompiledNetwork(BN bn, EliminationOrder.Heuristic heuristic) {
+        this.bn = bn;
+        this.symbols = bn.getSymbolTable();
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Compiling the snapshot of the given BN
+     *
+     * @param bn instance of BN class
+     * @return snapshot
+     */
+    public static CompiledNetwork compile(BN bn) {
+        return compile(bn, VariableElimination.DEFAULT_HEURISTIC);
+    }
+
+    /**
+     * Compiling the snapshot of the given BN
+     *
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for computing the order when no order is given
+     * @return snapshot
+     */
+    public static CompiledNetwork compile(BN bn, EliminationOrder.Heuristic heuristic) {
+        SymbolTable symbols = bn.getSymbolTable();
+
+        // Copying the variables in the order of their ids so that the ids stay the same
+        List<Variable> copies = new ArrayList<>(symbols.size());
+        for (int id = 0; id < symbols.size(); id++) {
+            Variable variable = symbols.getVariable(id);
+            copies.add(new Variable(variable.getName(), List.copyOf(variable.getOutcomes())));
+        }
+        new SymbolTable(copies);
+
+        for (int id = 0; id < symbols.size(); id++) {
+            Variable variable = symbols.getVariable(id);
+            List<Variable> parents = variable.getParents();
+            Variable[] copiedParents = new Variable[parents.size()];
+            for (int i = 0; i < copiedParents.length; i++) {
+                copiedParents[i] = copies.get(parents.get(i).getId());
+            }
+            // A mapped CPT is read-only, so the snapshot shares it instead of copying it
+            Factor cpt = variable.getCPT();
+            if (cpt.isOnHeap()) {
+                copies.get(id).initParents(cpt.getValues().clone(), copiedParents);
+            } else if (cpt.getStorage().isReadOnly()) {
+                copies.get(id).initParents(cpt.getStorage(), copiedParents);
+            } else {
+                double[] values = new double[cpt.size()];
+                for (int i = 0; i < values.length; i++) values[i] = cpt.getValue(i);
+                copies.get(id).initParents(values, copiedParents);
+            }
+        }
+
+        return new CompiledNetwork(new BN(copies), heuristic);
+    }
+
+    /**
+     * @param name the name of the variable
+     * @return id of the variable
+     */
+    public int resolveVariable(String name) {
+        return this.symbols.resolveVariable(name);
+    }
+
+    /**
+     * @param id      id of the variable
+     * @param outcome the outcome, e.g. "T"
+     * @return index of the outcome
+     */
+    public int resolveOutcome(int id, String outcome) {
+        return this.symbols.resolveOutcome(id, outcome);
+    }
+
+    /**
+     * @param evidences the pairs of variable names and values
+     * @return evidence
+     */
+    public Evidence resolveEvidence(List<String[]> evidences) {
+        return Evidence.resolve(evidences, this.symbols);
+    }
+
+    /**
+     * @param order the names of the variables in order
+     * @return ids of the variables in order
+     */
+    public int[] resolveOrder(List<String> order) {
+        int[] ids = new int[order.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.symbols.resolveVariable(order.get(i).trim());
+        }
+        return ids;
+    }
+
+    /**
+     * @return - The number of variables
+     */
+    public int getVariablesSize() {
+        return this.symbols.size();
+    }
+
+    /**
+     * Computing the distribution of the query variable under the evidence by Variable Elimination
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the probability of each outcome of the query variable
+     */
+    @Override
+    public double[] posterior(int query, Evidence evidence) {
+        return posterior(query, evidence, new int[0], new Counter());
+    }
+
+    /**
+     * Computing the distribution of the query variable under the evidence by Variable Elimination
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @param order    ids of the variables in order for Variable Elimination, or empty
+     * @param counter  the counter of this query for the number of addition and multiplication
+     * @return the probability of each outcome of the query variable
+     */
+    public double[] posterior(int query, Evidence evidence, int[] order, Counter counter) {
+        return VariableElimination.posterior(query, evidence, order, this.bn, this.heuristic, counter);
+    }
+}
@@ -1,33 +1,50 @@
-
 /**
  * The class for counting the number of additions and multiplies
+ * and the size of the largest factor built
+ * The counts are longs so that they don't overflow on large queries
  */
 public class Counter {
 
-    private int numberOfAdditions;
-    private int numberOfMultiplies;
+    private long numberOfAdditions;
+    private long numberOfMultiplies;
+    private long largestFactor;
 
     public Counter() {
         this.numberOfAdditions = 0;
         this.numberOfMultiplies = 0;
+        this.largestFactor = 0;
     }
 
-    public void sumAdd(int add) {
+    public void sumAdd(long add) {
         this.numberOfAdditions += add;
     }
 
-    public void multiAdd(int mul) {
+    public void multiAdd(long mul) {
         this.numberOfMultiplies += mul;
     }
 
-    public int getNumberOfAdditions() {
+    /**
+     * @param size the number of values of a factor which has been built
+     */
+    public void factorAdd(long size) {
+        this.largestFactor = Math.max(this.largestFactor, size);
+    }
+
+    public long getNumberOfAdditions() {
         return numberOfAdditions;
     }
 
-    public int getNumberOfMultiplies() {
+    public long getNumberOfMultiplies() {
         return numberOfMultiplies;
     }
 
+    /**
+     * @return - the number of values of the largest factor built
+     */
+    public long getLargestFactor() {
+        return largestFactor;
+    }
+
     @Override
     public String toString() {
         return this.numberOfAdditions + "," + this.numberOfMultiplies;
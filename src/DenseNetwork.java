@@ -0,0 +1,181 @@
+import java.util.*;
+
+/**
+ * The class for the CPTs of a BN copied as dense tables indexed by id, for the samplers
+ * The table of a variable is its CPT, the parents followed by the variable, so the variable has stride 1
+ * and the row of an assignment is the sum of the values of the parents times their strides.
+ * The children of each variable and the stride of the variable in the table of each child are kept as well,
+ * which with the parents make the Markov blanket of the variable.
+ * The CPTs are copied when it is built, so changing the BN afterwards changes neither the tables
+ * nor the estimates of the samplers reading them
+ */
+public class DenseNetwork {
+
+    private final double[][] tables;
+
+    private final int[][] parents;
+
+    private final int[][] parentStrides;
+
+    private final int[][] children;
+
+    private final int[][] childStrides;
+
+    private final int[][] markovBlankets;
+
+    private final int[] cardinalities;
+
+    private final int[] topologicalOrder;
+
+    /**
+     * Constructor
+     *
+     * @param bn instance of BN class
+     */
+    public DenseNetwork(BN bn) {
+        SymbolTable symbols = bn.getSymbolTable();
+        int n = symbols.size();
+        this.tables = new double[n][];
+        this.parents = new int[n][];
+        this.parentStrides = new int[n][];
+        this.cardinalities = new int[n];
+        List<List<Integer>> childList = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) childList.add(new ArrayList<>());
+
+        for (int id = 0; id < n; id++) {
+            Variable variable = symbols.getVariable(id);
+            Factor cpt = variable.getCPT();
+            double[] table = new double[cpt.size()];
+            for (int i = 0; i < table.length; i++) table[i] = cpt.getValue(i);
+            this.tables[id] = table;
+            this.cardinalities[id] = variable.getCardinality();
+
+            List<Variable> parentList = variable.getParents();
+            this.parents[id] = new int[parentList.size()];
+            this.parentStrides[id] = new int[parentList.size()];
+            for (int i = 0; i < parentList.size(); i++) {
+                this.parents[id][i] = parentList.get(i).getId();
+                this.parentStrides[id][i] = cpt.getStride(i);
+                childList.get(this.parents[id][i]).add(id);
+            }
+        }
+
+        this.children = new int[n][];
+        this.childStrides = new int[n][];
+        this.markovBlankets = new int[n][];
+        for (int id = 0; id < n; id++) {
+            List<Integer> list = childList.get(id);
+            this.children[id] = new int[list.size()];
+            this.childStrides[id] = new int[list.size()];
+            // The parents, the children and the other parents of the children
+            TreeSet<Integer> blanket = new TreeSet<>();
+            for (int parent : this.parents[id]) blanket.add(parent);
+            for (int i = 0; i < list.size(); i++) {
+                int child = list.get(i);
+                this.children[id][i] = child;
+                for (int j = 0; j < this.parents[child].length; j++) {
+                    if (this.parents[child][j] == id) this.childStrides[id][i] = this.parentStrides[child][j];
+                    blanket.add(this.parents[child][j]);
+                }
+                blanket.add(child);
+            }
+            blanket.remove(id);
+            this.markovBlankets[id] = blanket.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        this.topologicalOrder = topologicalOrder(n);
+    }
+
+    /**
+     * Ordering the variables so that every parent comes before its children
+     *
+     * @param n the number of variables
+     * @return ids of the variables in order
+     */
+    private int[] topologicalOrder(int n) {
+        int[] missing = new int[n];
+        for (int id = 0; id < n; id++) missing[id] = this.parents[id].length;
+
+        int[] order = new int[n];
+        int count = 0;
+        for (int id = 0; id < n; id++) {
+            if (missing[id] == 0) order[count++] = id;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int child : this.children[order[i]]) {
+                if (--missing[child] == 0) order[count++] = child;
+            }
+        }
+        if (count != n) {
+            throw new IllegalArgumentException("The BN has a cycle");
+        }
+        return order;
+    }
+
+    /**
+     * @return - the number of variables
+     */
+    public int size() {
+        return this.cardinalities.length;
+    }
+
+    /**
+     * @param id id of the variable
+     * @return the number of outcomes
+     */
+    public int getCardinality(int id) {
+        return this.cardinalities[id];
+    }
+
+    /**
+     * @param id id of the variable
+     * @return the CPT of the variable, do not change it
+     */
+    public double[] getTable(int id) {
+        return this.tables[id];
+    }
+
+    /**
+     * @param id         id of the variable
+     * @param assignment the values of the variables indexed by id
+     * @return the position of the first value of the row of the CPT for the values of the parents
+     */
+    public int getRow(int id, int[] assignment) {
+        int row = 0;
+        int[] parents = this.parents[id];
+        int[] strides = this.parentStrides[id];
+        for (int i = 0; i < parents.length; i++) row += assignment[parents[i]] * strides[i];
+        return row;
+    }
+
+    /**
+     * @param id id of the variable
+     * @return ids of the children, do not change them
+     */
+    public int[] getChildren(int id) {
+        return this.children[id];
+    }
+
+    /**
+     * @param id id of the variable
+     * @return the stride of the variable in the CPT of each of its children, do not change them
+     */
+    public int[] getChildStrides(int id) {
+        return this.childStrides[id];
+    }
+
+    /**
+     * @param id id of the variable
+     * @return ids of the parents, the children and the other parents of the children, sorted
+     */
+    public int[] getMarkovBlanket(int id) {
+        return this.markovBlankets[id].clone();
+    }
+
+    /**
+     * @return - ids of the variables in an order where every parent comes before its children
+     */
+    public int[] getTopologicalOrder() {
+        return this.topologicalOrder.clone();
+    }
+}
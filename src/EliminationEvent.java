@@ -0,0 +1,57 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The JFR event of a step of Variable Elimination, joining the factors of a variable and summing it out
+ * Its duration is the time of the step
+ */
+@Name("bn.Elimination")
+@Label("Elimination Step")
+@Category("Bayesian Networks")
+@Description("Factors joined and summed out by Variable Elimination")
+@StackTrace(false)
+public class EliminationEvent extends Event {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Label("Variables")
+    @Description("The variables summed out")
+    String variables;
+
+    @Label("Input Factors")
+    int inputs;
+
+    @Label("Input Size")
+    @Description("The number of values of the factors joined")
+    long inputSize;
+
+    @Label("Output Size")
+    @Description("The number of values of the factor left")
+    long outputSize;
+
+    @Label("Allocated")
+    @Description("The bytes allocated on the heap by the thread during the step")
+    @DataAmount
+    long allocated;
+
+    /**
+     * @return - the bytes allocated on the heap by the current thread, or 0 if the JVM doesn't measure them
+     */
+    static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.*;
+
+/**
+ * The class for computing an elimination order from the moral graph of BNs
+ */
+public class EliminationOrder {
+
+    /**
+     * The greedy heuristics for choosing the next variable to eliminate
+     */
+    public enum Heuristic {
+        // The variable with the fewest neighbours
+        MIN_DEGREE,
+        // The variable whose elimination adds the fewest edges
+        MIN_FILL,
+        // The variable whose elimination adds the edges with the smallest total weight,
+        // the weight of an edge is the product of the numbers of outcomes of its variables
+        WEIGHTED_MIN_FILL
+    }
+
+    private final BN bn;
+
+    private final SymbolTable symbols;
+
+    /**
+     * Neighbours of each variable in the moral graph of the whole BN, built when it is first needed
+     */
+    private Map<Integer, Set<Integer>> moralGraph;
+
+    /**
+     * Constructor
+     * The graphs are built from the parents in the BN when an order is computed,
+     * only over the variables the order is computed for
+     *
+     * @param bn instance of BN class
+     */
+    public EliminationOrder(BN bn) {
+        this.bn = bn;
+        this.symbols = bn.getSymbolTable();
+    }
+
+    /**
+     * @param id id of the variable
+     * @return the parents of the variable
+     */
+    private List<Variable> getParents(int id) {
+        return this.bn.getParents().get(this.symbols.getVariable(id).getName());
+    }
+
+    /**
+     * Building the moral graph of the CPTs of the given variables restricted to the given nodes
+     * The variables of each CPT are connected with each other
+     *
+     * @param variables ids of the variables whose CPTs are used
+     * @param nodes     ids of the variables of the graph
+     * @return neighbours of each variable of nodes
+     */
+    private Map<Integer, Set<Integer>> moralize(BitSet variables, BitSet nodes) {
+        Map<Integer, Set<Integer>> graph = new HashMap<>();
+        for (int id = nodes.nextSetBit(0); id >= 0; id = nodes.nextSetBit(id + 1)) {
+            graph.put(id, new HashSet<>());
+        }
+        for (int id = variables.nextSetBit(0); id >= 0; id = variables.nextSetBit(id + 1)) {
+            List<Variable> variableParents = getParents(id);
+            for (int i = 0; i < variableParents.size(); i++) {
+                int x = variableParents.get(i).getId();
+                if (!nodes.get(x)) continue;
+                if (nodes.get(id)) connect(graph, id, x);
+                for (int j = i + 1; j < variableParents.size(); j++) {
+                    int y = variableParents.get(j).getId();
+                    if (nodes.get(y)) connect(graph, x, y);
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static void connect(Map<Integer, Set<Integer>> graph, int x, int y) {
+        if (x == y) return;
+        graph.get(x).add(y);
+        graph.get(y).add(x);
+    }
+
+    /**
+     * Each variable is connected with its parents and children
+     * and the parents of each variable are connected with each other
+     *
+     * @param id id of the variable
+     * @return ids of the neighbours of the variable in the moral graph of the whole BN
+     */
+    public Set<Integer> getNeighbours(int id) {
+        if (this.moralGraph == null) {
+            BitSet nodes = new BitSet(this.symbols.size());
+            nodes.set(0, this.symbols.size());
+            this.moralGraph = moralize(nodes, nodes);
+        }
+        return Collections.unmodifiableSet(this.moralGraph.get(id));
+    }
+
+    /**
+     * Computing the order for the query variable under the evidence
+     * Every variable except the query and the evidence variables is eliminated
+     *
+     * @param query     id of the query variable
+     * @param evidence  the evidence variables, they are removed from the graph
+     * @param heuristic the heuristic to choose the next variable
+     * @return ids of the variables in order
+     */
+    public int[] getOrder(int query, Evidence evidence, Heuristic heuristic) {
+        BitSet variables = new BitSet(this.symbols.size());
+        variables.set(0, this.symbols.size());
+        return getOrder(variables, query, evidence, heuristic);
+    }
+
+    /**
+     * Computing the order for the query variable under the evidence when only the CPTs of the given variables are used
+     * Every variable of the CPTs except the query and the evidence variables is eliminated
+     *
+     * @param variables ids of the variables whose CPTs are used
+     * @param query     id of the query variable
+     * @param evidence  the evidence variables, they are removed from the graph
+     * @param heuristic the heuristic to choose the next variable
+     * @return ids of the variables in order
+     */
+    public int[] getOrder(BitSet variables, int query, Evidence evidence, Heuristic heuristic) {
+        BitSet nodes = new BitSet();
+        for (int id = variables.nextSetBit(0); id >= 0; id = variables.nextSetBit(id + 1)) {
+            nodes.set(id);
+            for (Variable parent : getParents(id)) nodes.set(parent.getId());
+        }
+        for (int i = 0; i < evidence.size(); i++) {
+            nodes.clear(evidence.getVariable(i));
+        }
+        BitSet keep = new BitSet();
+        keep.set(query);
+        return getOrder(variables, nodes, keep, heuristic);
+    }
+
+    /**
+     * Computing the order on the moral graph restricted to the given nodes
+     *
+     * @param variables ids of the variables whose CPTs are used
+     * @param nodes     ids of the variables of the graph
+     * @param keep      ids of the variables of the graph which are not eliminated
+     * @param heuristic the heuristic to choose the next variable
+     * @return ids of the variables of nodes but not of keep in order
+     */
+    public int[] getOrder(BitSet variables, BitSet nodes, BitSet keep, Heuristic heuristic) {
+
+        // Building the restricted graph, it changes since eliminating a variable adds fill edges
+        Map<Integer, Set<Integer>> graph = moralize(variables, nodes);
+
+        BitSet candidates = (BitSet) nodes.clone();
+        candidates.andNot(keep);
+        int[] order = new int[candidates.cardinality()];
+
+        // Scores are updated only for the variables next to the eliminated one,
+        // outdated entries of the queue are skipped by comparing with the current score
+        Map<Integer, Long> scores = new HashMap<>();
+        PriorityQueue<long[]> queue = new PriorityQueue<>((x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            long score = score(graph, id, heuristic);
+            scores.put(id, score);
+            queue.add(new long[]{score, id});
+        }
+
+        for (int step = 0; step < order.length; ) {
+            long[] top = queue.poll();
+            int h = (int) top[1];
+            if (!candidates.get(h) || top[0] != scores.get(h)) continue;
+
+            order[step++] = h;
+            candidates.clear(h);
+
+            // Connecting the neighbours with each other and removing h
+            List<Integer> neighbours = new ArrayList<>(graph.get(h));
+            for (int x : neighbours) {
+                graph.get(x).remove(h);
+                for (int y : neighbours) {
+                    if (x != y) graph.get(x).add(y);
+                }
+            }
+            graph.get(h).clear();
+
+            // The fill of a variable depends on its neighbours, so the second neighbourhood is updated too
+            Set<Integer> affected = new HashSet<>(neighbours);
+            if (heuristic != Heuristic.MIN_DEGREE) {
+                for (int x : neighbours) affected.addAll(graph.get(x));
+            }
+            for (int x : affected) {
+                if (candidates.get(x)) {
+                    long score = score(graph, x, heuristic);
+                    if (score != scores.get(x)) {
+                        scores.put(x, score);
+                        queue.add(new long[]{score, x});
+                    }
+                }
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * @param graph     the current graph
+     * @param id        id of the variable
+     * @param heuristic the heuristic
+     * @return the cost of eliminating the variable, the smaller the better
+     */
+    private long score(Map<Integer, Set<Integer>> graph, int id, Heuristic heuristic) {
+        Set<Integer> neighbours = graph.get(id);
+        if (heuristic == Heuristic.MIN_DEGREE) {
+            return neighbours.size();
+        }
+        long fill = 0;
+        Integer[] list = neighbours.toArray(new Integer[0]);
+        for (int i = 0; i < list.length; i++) {
+            for (int j = i + 1; j < list.length; j++) {
+                if (!graph.get(list[i]).contains(list[j])) {
+                    fill += heuristic == Heuristic.MIN_FILL ? 1
+                            : (long) this.symbols.getVariable(list[i]).getCardinality() * this.symbols.getVariable(list[j]).getCardinality();
+                }
+            }
+        }
+        return fill;
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.*;
+
+/**
+ * The class for the evidence of a query resolved to variable ids and outcome indices
+ */
+public class Evidence {
+
+    private static final int UNOBSERVED = -1;
+
+    private final int[] variables;
+
+    private final int[] values;
+
+    /**
+     * The value of each variable by id, or null if the evidence is sparse and looked up in variables
+     */
+    private final int[] assignment;
+
+    /**
+     * Constructor
+     *
+     * @param variables ids of the evidence variables
+     * @param values    outcome indices of the evidence variables
+     * @param size      the number of variables of the network
+     */
+    public Evidence(int[] variables, int[] values, int size) {
+        this.assignment = new int[size];
+        Arrays.fill(this.assignment, UNOBSERVED);
+        for (int i = 0; i < variables.length; i++) {
+            this.assignment[variables[i]] = values[i];
+        }
+
+        // Keeping the variables sorted by id
+        int count = 0;
+        for (int value : this.assignment) {
+            if (value != UNOBSERVED) count++;
+        }
+        this.variables = new int[count];
+        this.values = new int[count];
+        for (int id = 0, i = 0; id < size; id++) {
+            if (this.assignment[id] != UNOBSERVED) {
+                this.variables[i] = id;
+                this.values[i++] = this.assignment[id];
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     * Keeping only the evidence variables, a lookup is a binary search on them
+     *
+     * @param variables ids of the evidence variables sorted without duplicates
+     * @param values    outcome indices of the evidence variables
+     */
+    private Evidence(int[] variables, int[] values) {
+        this.assignment = null;
+        this.variables = variables;
+        this.values = values;
+    }
+
+    /**
+     * Building evidence whose size depends on the number of its variables but not of the network,
+     * e.g. for evidence changed one variable at a time on a large network
+     *
+     * @param variables ids of the evidence variables sorted without duplicates
+     * @param values    outcome indices of the evidence variables
+     * @return sparse evidence
+     */
+    public static Evidence sparse(int[] variables, int[] values) {
+        for (int i = 1; i < variables.length; i++) {
+            if (variables[i - 1] >= variables[i]) {
+                throw new IllegalArgumentException("The evidence variables must be sorted without duplicates");
+            }
+        }
+        return new Evidence(variables.clone(), values.clone());
+    }
+
+    /**
+     * Building evidence without variables
+     *
+     * @param size the number of variables of the network
+     * @return empty evidence
+     */
+    public static Evidence empty(int size) {
+        return new Evidence(new int[0], new int[0], size);
+    }
+
+    /**
+     * Resolving the evidence given on console, e.g. {"A", "T"}
+     *
+     * @param evidences the pairs of variable names and values
+     * @param symbols   the symbol table of the network
+     * @return evidence
+     * @throws IllegalArgumentException if a name is unknown or a variable is given more than once
+     */
+    public static Evidence resolve(List<String[]> evidences, SymbolTable symbols) {
+        List<int[]> pairs = new ArrayList<>();
+        Set<Integer> given = new HashSet<>();
+        if (evidences != null) {
+            for (String[] evidence : evidences) {
+                if (evidence != null && evidence.length > 1) {
+                    int id = symbols.resolveVariable(evidence[0]);
+                    if (!given.add(id)) {
+                        throw new IllegalArgumentException("More than one value given for the evidence of " + evidence[0]);
+                    }
+                    pairs.add(new int[]{id, symbols.resolveOutcome(id, evidence[1])});
+                }
+            }
+        }
+        int[] variables = new int[pairs.size()];
+        int[] values = new int[pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            variables[i] = pairs.get(i)[0];
+            values[i] = pairs.get(i)[1];
+        }
+        return new Evidence(variables, values, symbols.size());
+    }
+
+    /**
+     * @param id id of the variable
+     * @return whether the variable is observed or not
+     */
+    public boolean contains(int id) {
+        return getValue(id) != UNOBSERVED;
+    }
+
+    /**
+     * @param id id of the variable
+     * @return outcome index of the variable or -1 if it is not observed
+     */
+    public int getValue(int id) {
+        if (this.assignment != null) return this.assignment[id];
+        int i = Arrays.binarySearch(this.variables, id);
+        return i >= 0 ? this.values[i] : UNOBSERVED;
+    }
+
+    /**
+     * @return - The number of evidence variables
+     */
+    public int size() {
+        return this.variables.length;
+    }
+
+    /**
+     * @param i the position of the evidence sorted by id
+     * @return id of the evidence variable
+     */
+    public int getVariable(int i) {
+        return this.variables[i];
+    }
+
+    /**
+     * @param i the position of the evidence sorted by id
+     * @return outcome index of the evidence variable
+     */
+    public int getValueAt(int i) {
+        return this.values[i];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Evidence evidence = (Evidence) o;
+        return Arrays.equals(this.variables, evidence.variables) && Arrays.equals(this.values, evidence.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(this.variables) + Arrays.hashCode(this.values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < this.variables.length; i++) {
+            if (i > 0) result.append(",");
+            result.append(this.variables[i]).append("=").append(this.values[i]);
+        }
+        return result.toString();
+    }
+}
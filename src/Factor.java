@@ -0,0 +1,387 @@
+import java.util.*;
+
+/**
+ * The class for a factor stored as a dense table
+ * e.g. the scope (A, B) with two outcomes each is stored as the values of
+ * "A=T,B=T", "A=T,B=F", "A=F,B=T", "A=F,B=F" in this order
+ * The values are either a double array on the heap or a storage, e.g. a CPT mapped from a compiled file,
+ * a large factor allocated off-heap, a factor stored as floats or the non-zero entries of a sparse factor
+ * A view reads the values of another factor with some of its variables fixed, e.g. a CPT restricted to the evidence,
+ * so its values start at an offset and its strides are those of the other factor
+ */
+public class Factor {
+
+    private final Variable[] scope;
+    private final int[] cardinalities;
+    private final int[] strides;
+    private final int offset;
+    private final int size;
+    private final boolean view;
+    private final double[] values;
+    private final ValueStorage storage;
+
+    /**
+     * Constructor
+     * The last variable of the scope changes the fastest
+     *
+     * @param scope  the ordered variables of the factor
+     * @param values the values of each assignment
+     */
+    public Factor(Variable[] scope, double[] values) {
+        this(scope, values, null, values.length);
+    }
+
+    /**
+     * Building a factor reading its values from a storage without copying them
+     *
+     * @param scope   the ordered variables of the factor
+     * @param storage the values of each assignment
+     */
+    public Factor(Variable[] scope, ValueStorage storage) {
+        this(scope, null, storage, storage.size());
+    }
+
+    private Factor(Variable[] scope, double[] values, ValueStorage storage, int length) {
+        this.scope = scope;
+        this.cardinalities = new int[scope.length];
+        this.strides = new int[scope.length];
+
+        int stride = 1;
+        for (int i = scope.length - 1; i >= 0; i--) {
+            this.cardinalities[i] = scope[i].getCardinality();
+            this.strides[i] = stride;
+            stride = multiplySize(stride, this.cardinalities[i], scope);
+        }
+
+        if (length != stride) {
+            throw new IllegalArgumentException("Expected " + stride + " values for " + Arrays.toString(scope) + " but got " + length);
+        }
+        this.offset = 0;
+        this.size = stride;
+        this.view = false;
+        this.values = values;
+        this.storage = storage;
+    }
+
+    private Factor(Factor base, Variable[] scope, int[] strides, int offset) {
+        this.scope = scope;
+        this.cardinalities = new int[scope.length];
+        this.strides = strides;
+
+        int size = 1;
+        for (int i = 0; i < scope.length; i++) {
+            this.cardinalities[i] = scope[i].getCardinality();
+            size = multiplySize(size, this.cardinalities[i], scope);
+        }
+        this.offset = offset;
+        this.size = size;
+        this.view = true;
+        this.values = base.values;
+        this.storage = base.storage;
+    }
+
+    /**
+     * Building a view of the factor over some of its variables with the other variables fixed, nothing is copied
+     *
+     * @param positions the positions of the kept variables in the scope, in order
+     * @param offset    the position of the first value of the view, i.e. the fixed outcomes times their strides
+     * @return view
+     */
+    public Factor restrict(int[] positions, int offset) {
+        Variable[] scope = new Variable[positions.length];
+        int[] strides = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            scope[i] = this.scope[positions[i]];
+            strides[i] = this.strides[positions[i]];
+        }
+        return new Factor(this, scope, strides, this.offset + offset);
+    }
+
+    /**
+     * Building an empty factor for the given scope
+     *
+     * @param scope the ordered variables of the factor
+     */
+    public Factor(Variable[] scope) {
+        this(scope, new double[size(scope)]);
+    }
+
+    /**
+     * Building an empty factor for the given scope in the current precision,
+     * off-heap if it is as large as the threshold of OffHeap
+     *
+     * @param scope the ordered variables of the factor
+     * @return factor
+     */
+    public static Factor allocate(Variable[] scope) {
+        int size = size(scope);
+        ValueStorage storage = OffHeap.allocate(size);
+        if (storage == null && Precision.isSingle()) storage = new FloatStorage(size);
+        return storage == null ? new Factor(scope) : new Factor(scope, storage);
+    }
+
+    /**
+     * Building a factor of the given values in the current precision, copied off-heap if it is large
+     *
+     * @param scope  the ordered variables of the factor
+     * @param values the values of each assignment
+     * @return factor
+     */
+    public static Factor of(Variable[] scope, double[] values) {
+        ValueStorage storage = OffHeap.allocate(values.length);
+        if (storage == null && Precision.isSingle()) storage = new FloatStorage(values.length);
+        if (storage == null) return new Factor(scope, values);
+        storage.write(0, values, 0, values.length);
+        return new Factor(scope, storage);
+    }
+
+    /**
+     * Building a factor without variables
+     *
+     * @param value the value of the factor
+     * @return scalar factor
+     */
+    public static Factor scalar(double value) {
+        return new Factor(new Variable[0], new double[]{value});
+    }
+
+    /**
+     * @param scope the ordered variables
+     * @return the number of assignments of the given variables
+     * @throws IllegalArgumentException if the number doesn't fit in an int
+     */
+    public static int size(Variable[] scope) {
+        int size = 1;
+        for (Variable variable : scope) {
+            size = multiplySize(size, variable.getCardinality(), scope);
+        }
+        return size;
+    }
+
+    /**
+     * Multiplying a size by a cardinality, the positions of the values of a factor are ints
+     *
+     * @param size        the number of assignments so far
+     * @param cardinality the cardinality of the next variable
+     * @param scope       the variables of the factor, for the message
+     * @return the product
+     * @throws IllegalArgumentException if the product doesn't fit in an int
+     */
+    private static int multiplySize(int size, int cardinality, Variable[] scope) {
+        try {
+            return Math.multiplyExact(size, cardinality);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The factor of " + Arrays.toString(scope) + " has more than "
+                    + Integer.MAX_VALUE + " values");
+        }
+    }
+
+    /**
+     * @return - the ordered variables of the factor
+     */
+    public Variable[] getScope() {
+        return this.scope;
+    }
+
+    /**
+     * @param i the position of the variable in the scope
+     * @return id of the variable
+     */
+    public int getId(int i) {
+        return this.scope[i].getId();
+    }
+
+    /**
+     * @return - the number of variables of the factor
+     */
+    public int getScopeSize() {
+        return this.scope.length;
+    }
+
+    /**
+     * @param i the position of the variable in the scope
+     * @return the number of outcomes of the variable
+     */
+    public int getCardinality(int i) {
+        return this.cardinalities[i];
+    }
+
+    /**
+     * @param i the position of the variable in the scope
+     * @return the distance between the positions of two neighbouring outcomes of the variable
+     */
+    public int getStride(int i) {
+        return this.strides[i];
+    }
+
+    /**
+     * @return - the position of the first value, 0 unless the factor is a view
+     */
+    public int getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @return - true if the factor reads the values of another factor
+     */
+    public boolean isView() {
+        return this.view;
+    }
+
+    /**
+     * @return - the number of values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return - true if the values are kept in a double array on the heap in the order of the assignments
+     */
+    public boolean isOnHeap() {
+        return this.values != null && !this.view;
+    }
+
+    /**
+     * @return - true if only the non-zero values are kept
+     */
+    public boolean isSparse() {
+        return this.storage instanceof SparseStorage && !this.view;
+    }
+
+    /**
+     * @return - the fraction of the values which are kept, 1 for a dense factor
+     */
+    public double getDensity() {
+        if (!isSparse()) return 1.0;
+        return (double) ((SparseStorage) this.storage).nonZeros() / size();
+    }
+
+    /**
+     * @return - the values of each assignment, only for a factor on the heap
+     */
+    public double[] getValues() {
+        if (!isOnHeap()) {
+            throw new UnsupportedOperationException("The values of a view or a factor which isn't on the heap are read by getValue");
+        }
+        return this.values;
+    }
+
+    /**
+     * @return - the storage of the values, or null for a factor on the heap
+     */
+    public ValueStorage getStorage() {
+        return this.storage;
+    }
+
+    /**
+     * Releasing the off-heap memory of the factor as soon as it isn't needed
+     * Nothing happens for a factor on the heap, a mapped CPT or a view, which doesn't own its values
+     */
+    public void free() {
+        if (this.storage != null && !this.view) this.storage.free();
+    }
+
+    /**
+     * @param index the index of the assignment in the order of the scope
+     * @return the value
+     */
+    public double getValue(int index) {
+        if (!this.view) return getValueAt(index);
+        int position = this.offset;
+        for (int i = this.scope.length - 1; i >= 0; i--) {
+            position += (index % this.cardinalities[i]) * this.strides[i];
+            index /= this.cardinalities[i];
+        }
+        return getValueAt(position);
+    }
+
+    /**
+     * Reading a value by its position, which the kernels compute from the offset and the strides
+     *
+     * @param position the offset plus the outcome of each variable times its stride
+     * @return the value
+     */
+    public double getValueAt(int position) {
+        return this.values != null ? this.values[position] : this.storage.get(position);
+    }
+
+    /**
+     * @param assignment the outcome index of each variable of the scope
+     * @return the value
+     */
+    public double getValue(int[] assignment) {
+        return getValueAt(getPosition(assignment));
+    }
+
+    /**
+     * @param assignment the outcome index of each variable of the scope
+     * @return the position of the value of the assignment
+     */
+    public int getPosition(int[] assignment) {
+        int index = this.offset;
+        for (int i = 0; i < this.scope.length; i++) {
+            index += assignment[i] * this.strides[i];
+        }
+        return index;
+    }
+
+    /**
+     * @param variable the variable
+     * @return the position of the variable in the scope or -1
+     */
+    public int positionOf(Variable variable) {
+        return positionOf(variable.getId());
+    }
+
+    /**
+     * @param id id of the variable
+     * @return the position of the variable in the scope or -1
+     */
+    public int positionOf(int id) {
+        for (int i = 0; i < this.scope.length; i++) {
+            if (this.scope[i].getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param variable the variable
+     * @return whether the factor includes the variable or not
+     */
+    public boolean contains(Variable variable) {
+        return positionOf(variable.getId()) >= 0;
+    }
+
+    /**
+     * @param id id of the variable
+     * @return whether the factor includes the variable or not
+     */
+    public boolean contains(int id) {
+        return positionOf(id) >= 0;
+    }
+
+    /**
+     * Converting to string
+     *
+     * @return string represents each assignment and value, e.g. "A=T,B=F : 0.3"
+     */
+    @Override
+    public String toString() {
+        if (this.scope.length == 0) return " : " + getValue(0) + "\n";
+        StringBuilder output = new StringBuilder();
+        for (int index = 0; index < size(); index++) {
+            int stride = size();
+            for (int i = 0; i < this.scope.length; i++) {
+                stride /= this.cardinalities[i];
+                int outcome = (index / stride) % this.cardinalities[i];
+                output.append(this.scope[i].getName()).append("=").append(this.scope[i].getOutcomes().get(outcome));
+                if (i != this.scope.length - 1) output.append(",");
+            }
+            output.append(" : ").append(getValue(index)).append("\n");
+        }
+        return output.toString();
+    }
+}
@@ -6,9 +6,13 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.File;
-import java.io.IOException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -61,11 +65,8 @@ public class FileManager {
         // Final outcomes of each variable
         List<List<String>> outcomes = new ArrayList<>();
 
-        // Final parents of each variable
-        HashMap<String, List<Variable>> parents = new HashMap<>();
-
-        // Final values of each variable
-        HashMap<String, List<Double>> values = new HashMap<>();
+        // Final definitions of each variable
+        List<Definition> definitions = new ArrayList<>();
 
         // Final variables
         NodeList variableList = doc.getDocumentElement().getElementsByTagName("VARIABLE");
@@ -91,73 +92,357 @@ public class FileManager {
             outcomes.add(outcome);
         }
 
-        // Current variables indexed by name
-        HashMap<String, Variable> variablesHashMap = new HashMap<>();
-        for (int i = 0; i < variableList.getLength(); i++) {
-            variablesHashMap.put(names.get(i), new Variable(names.get(i), outcomes.get(i)));
-        }
-
         // Reading variables
         NodeList nodeList = doc.getDocumentElement().getElementsByTagName("DEFINITION");
 
         for (int i = 0; i < nodeList.getLength(); i++) {
             Node definitionNode = nodeList.item(i);
-            String name = "";
-            List<Variable> variableParents = new ArrayList<>();
-            String table = "";
+            Definition definition = new Definition(-1);
             if (definitionNode.getNodeType() == Node.ELEMENT_NODE) {
                 NodeList inner = definitionNode.getChildNodes();
                 for (int j = 0; j < inner.getLength(); j++) {
                     Node innerNode = inner.item(j);
                     if (innerNode.getNodeName().equals("FOR")) {
-                        name = innerNode.getTextContent();
+                        definition.name = innerNode.getTextContent();
                     } else if (innerNode.getNodeName().equals("GIVEN")) {
                         NodeList nodeParents = innerNode.getChildNodes();
                         for (int k = 0; k < nodeParents.getLength(); k++) {
-                            variableParents.add(variablesHashMap.get(nodeParents.item(k).getTextContent()));
+                            definition.parents.add(nodeParents.item(k).getTextContent());
                         }
                     } else if (innerNode.getNodeName().equals("TABLE")) {
-                        table = innerNode.getTextContent();
+                        TableParser parser = new TableParser(definition, 16);
+                        String table = innerNode.getTextContent();
+                        parser.feed(table.toCharArray(), 0, table.length());
+                        definition.table = parser.finish();
+                    }
+                }
+            }
+            definitions.add(definition);
+        }
+
+        return createVariables(names, outcomes, definitions);
+    }
+
+    /**
+     * Loading the variables of a xml file with a streaming (StAX) parser
+     * Only the names, the outcomes and the tables are kept, and the numbers of the tables
+     * are parsed straight into arrays of doubles
+     *
+     * @param filePath the path of the XMLBIF file
+     * @return variables in the order of the file
+     * @throws IOException if the file can't be read or it isn't well-formed xml
+     */
+    public static List<Variable> loadVariables(String filePath) throws IOException {
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+        List<String> names = new ArrayList<>();
+        List<List<String>> outcomes = new ArrayList<>();
+        List<Definition> definitions = new ArrayList<>();
+
+        // The number of outcomes of each variable declared so far, for the size of the tables
+        HashMap<String, Integer> cardinalities = new HashMap<>();
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filePath))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+                    if (reader.getLocalName().equals("VARIABLE")) {
+                        String name = null;
+                        List<String> outcome = new ArrayList<>();
+                        while (nextChild(reader)) {
+                            if (reader.getLocalName().equals("NAME")) {
+                                name = reader.getElementText().trim();
+                            } else if (reader.getLocalName().equals("OUTCOME")) {
+                                outcome.add(reader.getElementText().trim());
+                            } else {
+                                skipElement(reader);
+                            }
+                        }
+                        names.add(name);
+                        outcomes.add(outcome);
+                        cardinalities.put(name, outcome.size());
+
+                    } else if (reader.getLocalName().equals("DEFINITION")) {
+                        Definition definition = new Definition(reader.getLocation().getLineNumber());
+                        while (nextChild(reader)) {
+                            if (reader.getLocalName().equals("FOR")) {
+                                definition.name = reader.getElementText().trim();
+                            } else if (reader.getLocalName().equals("GIVEN")) {
+                                definition.parents.add(reader.getElementText().trim());
+                            } else if (reader.getLocalName().equals("TABLE")) {
+                                definition.table = readTable(reader, definition, cardinalities);
+                            } else {
+                                skipElement(reader);
+                            }
+                        }
+                        definitions.add(definition);
                     }
                 }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid xml in " + filePath + ": " + e.getMessage(), e);
+        }
+
+        return createVariables(names, outcomes, definitions);
+    }
+
+    /**
+     * Moving to the next child element of the current element
+     *
+     * @param reader the reader at the start of the current element or the end of a child
+     * @return true if the reader is at the start of a child, false if it is at the end of the current element
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) return true;
+            if (event == XMLStreamConstants.END_ELEMENT) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Skipping the current element and its children, e.g. PROPERTY
+     *
+     * @param reader the reader at the start of the element
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    /**
+     * Parsing the text of a TABLE element chunk by chunk without building the string of the whole table
+     *
+     * @param reader        the reader at the start of the TABLE element
+     * @param definition    the definition the table belongs to
+     * @param cardinalities the number of outcomes of the variables declared so far
+     * @return the values of the table
+     */
+    private static double[] readTable(XMLStreamReader reader, Definition definition,
+                                      HashMap<String, Integer> cardinalities) throws XMLStreamException {
+
+        // Guessing the size from the cardinalities if the variables are declared before the definition
+        long expected = cardinalities.getOrDefault(definition.name, 2);
+        for (String parent : definition.parents) {
+            expected *= cardinalities.getOrDefault(parent, 2);
+        }
+        TableParser parser = new TableParser(definition, (int) Math.min(expected, 1 << 20));
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                parser.feed(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                throw new IllegalArgumentException(where(definition) + "Unexpected element in the table of "
+                        + definition.name + ": " + reader.getLocalName());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return parser.finish();
+    }
+
+    /**
+     * Checking the definitions and building the variables
+     * Each table must have a row of probabilities for each combination of the outcomes of the parents
+     *
+     * @param names       the names of the variables in the order of the file
+     * @param outcomes    the outcomes of each variable
+     * @param definitions the definitions of the variables
+     * @return variables in the order of the file
+     */
+    private static List<Variable> createVariables(List<String> names, List<List<String>> outcomes, List<Definition> definitions) {
+
+        // Current variables indexed by name
+        HashMap<String, Variable> variablesHashMap = new HashMap<>();
+        List<Variable> declared = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i) == null || names.get(i).isEmpty()) {
+                throw new IllegalArgumentException("A variable has no name");
+            }
+            if (outcomes.get(i).isEmpty()) {
+                throw new IllegalArgumentException("Variable " + names.get(i) + " has no outcomes");
+            }
+            Variable variable = new Variable(names.get(i), outcomes.get(i));
+            variablesHashMap.put(names.get(i), variable);
+            declared.add(variable);
+        }
+
+        // Giving each variable and outcome a dense id once for the whole network
+        new SymbolTable(declared);
+
+        HashMap<String, Definition> definitionsHashMap = new HashMap<>();
+        for (Definition definition : definitions) {
+            if (!variablesHashMap.containsKey(definition.name)) {
+                throw new IllegalArgumentException(where(definition) + "Definition of an unknown variable: " + definition.name);
+            }
+            if (definitionsHashMap.put(definition.name, definition) != null) {
+                throw new IllegalArgumentException(where(definition) + "Duplicate definition of " + definition.name);
             }
-            parents.put(name, variableParents);
-            values.put(name, splitTableLine(table));
         }
 
         List<Variable> variables = new ArrayList<>();
 
-        // Initializing parents
-        variablesHashMap.forEach((key, value) -> {
-            List<Double> t1 = values.get(key);
-            List<Variable> s1 = parents.get(key);
+        // Initializing parents in the order of the variables in the xml document
+        for (String key : names) {
+            Variable value = variablesHashMap.get(key);
+            Definition definition = definitionsHashMap.get(key);
+            if (definition == null || definition.table == null) {
+                throw new IllegalArgumentException("Missing table of " + key);
+            }
 
-            double[] t2 = new double[t1.size()];
-            for (int i = 0; i < t2.length; i++) t2[i] = t1.get(i);
+            Variable[] s2 = new Variable[definition.parents.size()];
+            long rows = 1;
+            for (int i = 0; i < s2.length; i++) {
+                s2[i] = variablesHashMap.get(definition.parents.get(i));
+                if (s2[i] == null) {
+                    throw new IllegalArgumentException(where(definition) + "Unknown parent of " + key + ": " + definition.parents.get(i));
+                }
+                rows *= s2[i].getCardinality();
+            }
 
-            Variable[] s2 = new Variable[s1.size()];
-            for (int i = 0; i < s2.length; i++) s2[i] = s1.get(i);
+            // The table must have a row for each combination of the outcomes of the parents
+            double[] t2 = definition.table;
+            long expected = rows * value.getCardinality();
+            if (t2.length != expected) {
+                throw new IllegalArgumentException(where(definition) + "Malformed table of " + key + ": expected "
+                        + rows + " rows of " + value.getCardinality() + " values (" + expected + " values) but found "
+                        + t2.length + " values");
+            }
 
             value.initParents(t2, s2);
             variables.add(value);
-        });
+        }
 
         return variables;
     }
 
+    private static String where(Definition definition) {
+        return definition.line > 0 ? "Line " + definition.line + ": " : "";
+    }
+
     /**
-     * Converting a string of doubles into a list of doubles.
-     * e.g. Converting "0.7 0.3" into List<Double>{0.7, 0.3}
-     *
-     * @param line a string of doubles
-     * @return List<Double>
+     * The definition of a variable as it is written in the file
+     */
+    private static final class Definition {
+        private final int line;
+        private String name = "";
+        private final List<String> parents = new ArrayList<>();
+        private double[] table;
+
+        private Definition(int line) {
+            this.line = line;
+        }
+    }
+
+    /**
+     * The parser of the numbers of a table given in chunks of characters
+     * A number may be split between two chunks
      */
-    private static List<Double> splitTableLine(String line) {
-        String[] splitLine = line.split(" ");
-        List<Double> result = new ArrayList<>();
-        for (String value : splitLine) {
-            result.add(Double.parseDouble(value));
+    private static final class TableParser {
+
+        // The largest mantissa that is exact as a double
+        private static final long MAX_EXACT = (1L << 53) - 1;
+
+        // The powers of 10 that are exact as doubles
+        private static final double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1.0;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+
+        private final Definition definition;
+        private double[] values;
+        private int size;
+        private char[] token = new char[32];
+        private int tokenLength;
+
+        private TableParser(Definition definition, int capacity) {
+            this.definition = definition;
+            this.values = new double[Math.max(capacity, 2)];
+        }
+
+        /**
+         * Parsing the numbers of a chunk, the last number is kept until the next whitespace
+         */
+        private void feed(char[] chars, int start, int length) {
+            for (int i = start; i < start + length; i++) {
+                char c = chars[i];
+                if (c == ' ' || c == '\n' || c == '\t' || c == '\r') {
+                    if (this.tokenLength > 0) add();
+                } else {
+                    if (this.tokenLength == this.token.length) this.token = Arrays.copyOf(this.token, this.tokenLength * 2);
+                    this.token[this.tokenLength++] = c;
+                }
+            }
+        }
+
+        /**
+         * @return - the numbers of the table
+         */
+        private double[] finish() {
+            if (this.tokenLength > 0) add();
+            return this.size == this.values.length ? this.values : Arrays.copyOf(this.values, this.size);
+        }
+
+        private void add() {
+            double value = parse();
+            if (!(value >= 0.0 && value <= 1.0)) {
+                throw new IllegalArgumentException(where(this.definition) + "Malformed table of " + this.definition.name + ": "
+                        + new String(this.token, 0, this.tokenLength) + " is not a probability");
+            }
+            if (this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size * 2);
+            this.values[this.size++] = value;
+            this.tokenLength = 0;
+        }
+
+        /**
+         * Parsing the token, plain decimals like "0.05" are divided by a power of 10 without allocating,
+         * which gives the same double as Double.parseDouble when the mantissa and the power are exact
+         */
+        private double parse() {
+            long mantissa = 0;
+            int fraction = -1;
+            boolean plain = true;
+            for (int i = 0; i < this.tokenLength && plain; i++) {
+                char c = this.token[i];
+                if (c >= '0' && c <= '9') {
+                    if (mantissa > (MAX_EXACT - 9) / 10) {
+                        plain = false;
+                    } else {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (fraction >= 0) fraction++;
+                    }
+                } else if (c == '.' && fraction < 0) {
+                    fraction = 0;
+                } else {
+                    plain = false;
+                }
+            }
+            if (plain && fraction < POWERS_OF_TEN.length && (this.tokenLength > 1 || fraction < 0)) {
+                return fraction <= 0 ? (double) mantissa : mantissa / POWERS_OF_TEN[fraction];
+            }
+            String text = new String(this.token, 0, this.tokenLength);
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(where(this.definition) + "Malformed table of " + this.definition.name + ": " + text + " is not a number");
+            }
         }
-        return result;
     }
 }
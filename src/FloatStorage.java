@@ -0,0 +1,54 @@
+/**
+ * The values of a factor stored as floats on the heap, which halves the memory of a factor
+ * Every value is rounded to the nearest float when it is written and read back as a double
+ */
+public class FloatStorage implements ValueStorage {
+
+    private final float[] values;
+
+    /**
+     * Constructor
+     *
+     * @param size the number of values, all zero
+     */
+    public FloatStorage(int size) {
+        this.values = new float[size];
+    }
+
+    /**
+     * Rounding the given values to floats
+     *
+     * @param values the values of each assignment
+     */
+    public FloatStorage(double[] values) {
+        this(values.length);
+        write(0, values, 0, values.length);
+    }
+
+    @Override
+    public int size() {
+        return this.values.length;
+    }
+
+    @Override
+    public double get(int index) {
+        return this.values[index];
+    }
+
+    @Override
+    public void write(int index, double[] values, int from, int length) {
+        for (int i = 0; i < length; i++) {
+            this.values[index + i] = (float) values[from + i];
+        }
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public void free() {
+        // The array is released by the garbage collector
+    }
+}
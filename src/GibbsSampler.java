@@ -0,0 +1,549 @@
+import java.util.*;
+
+/**
+ * The class for approximate inference by Gibbs sampling, which unlike likelihood weighting
+ * keeps working when the evidence is unlikely
+ * Each step draws a variable from its distribution given its Markov blanket,
+ * its CPT row times the rows of its children, read from the dense tables of DenseNetwork.
+ * A sweep steps through every variable which is not an evidence once.
+ *
+ * Several chains start from uniformly random states, which are more spread out than the posterior, and run
+ * on the pool of ParallelKernels, each with its own SplittableRandom split from the seed in order,
+ * so the estimate doesn't depend on the threads.
+ * After the burn-in every thinning-th sweep is kept. The chains run in rounds, and sampling stops
+ * once the split R-hat of every outcome is below the target and its Monte Carlo standard error (MCSE),
+ * estimated by batch means, is below its own target, or the samples run out.
+ * A step allocates nothing, each chain reuses its assignment and the buffer of the distribution,
+ * and keeps the outcomes of the query of its samples for the diagnostics.
+ * Only the query, the evidence and their ancestors are sampled, the other variables don't change the distribution
+ */
+public class GibbsSampler implements SamplingEngine {
+
+    public static final int DEFAULT_CHAINS = 4;
+
+    public static final int DEFAULT_BURN_IN = 1000;
+
+    public static final int DEFAULT_THINNING = 1;
+
+    /**
+     * The default most samples kept by each chain
+     */
+    public static final long DEFAULT_SAMPLES = 25000;
+
+    public static final double DEFAULT_R_HAT = 1.01;
+
+    public static final double DEFAULT_MCSE = 0.005;
+
+    /**
+     * The number of samples each chain keeps in a round, before R-hat is checked
+     */
+    private static final int ROUND_SIZE = 1000;
+
+    /**
+     * The number of uniform states, and then of forward samples, tried to find a starting state
+     * with a positive probability
+     */
+    private static final int START_ATTEMPTS = 1000;
+
+    private final BN bn;
+
+    private final DenseNetwork network;
+
+    private final int[] topologicalOrder;
+
+    private final int chains;
+
+    private final int burnIn;
+
+    private final int thinning;
+
+    private final long samples;
+
+    private final double targetRHat;
+
+    private final double targetMcse;
+
+    private final long seed;
+
+    /**
+     * The estimate of the distribution of a query
+     */
+    public static final class Estimate {
+        private final double[] probabilities;
+        private final double rHat;
+        private final double[] mcse;
+        private final long samples;
+
+        private Estimate(double[] probabilities, double rHat, double[] mcse, long samples) {
+            this.probabilities = probabilities;
+            this.rHat = rHat;
+            this.mcse = mcse;
+            this.samples = samples;
+        }
+
+        /**
+         * @return - the estimated probability of each outcome of the query variable
+         */
+        public double[] getProbabilities() {
+            return this.probabilities.clone();
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the estimated probability
+         */
+        public double getProbability(int outcome) {
+            return this.probabilities[outcome];
+        }
+
+        /**
+         * @return - the largest R-hat of the outcomes, close to 1 when the chains agree
+         */
+        public double getRHat() {
+            return this.rHat;
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the Monte Carlo standard error of the estimated probability
+         */
+        public double getMcse(int outcome) {
+            return this.mcse[outcome];
+        }
+
+        /**
+         * @return - the largest Monte Carlo standard error of the probabilities of the outcomes
+         */
+        public double getMcse() {
+            return max(this.mcse);
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the lower end of the 95% confidence interval
+         */
+        public double getLower(int outcome) {
+            return Math.max(0.0, this.probabilities[outcome] - LikelihoodWeighting.Z_95 * this.mcse[outcome]);
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the upper end of the 95% confidence interval
+         */
+        public double getUpper(int outcome) {
+            return Math.min(1.0, this.probabilities[outcome] + LikelihoodWeighting.Z_95 * this.mcse[outcome]);
+        }
+
+        /**
+         * @return - the number of samples kept by all the chains
+         */
+        public long getSamples() {
+            return this.samples;
+        }
+
+        /**
+         * Converting to string
+         *
+         * @return string of the probabilities and the diagnostics
+         */
+        @Override
+        public String toString() {
+            StringJoiner out = new StringJoiner(",", "[", "]");
+            for (double probability : this.probabilities) out.add(String.format("%.5f", probability));
+            return out + " samples=" + this.samples + " rHat=" + String.format("%.4f", this.rHat)
+                    + " mcse=" + String.format("%.5f", getMcse());
+        }
+    }
+
+    /**
+     * The state of a chain, kept between the rounds
+     */
+    private static final class Chain {
+        private final SplittableRandom random;
+        private final int[] assignment;
+        private final double[] weights;
+        private final long[] counts;
+        // The outcome of the query in each sample kept
+        private int[] history = new int[0];
+
+        private Chain(SplittableRandom random, int variables, int maxCardinality, int queryCardinality) {
+            this.random = random;
+            this.assignment = new int[variables];
+            this.weights = new double[maxCardinality];
+            this.counts = new long[queryCardinality];
+        }
+    }
+
+    /**
+     * Constructor
+     * The settings are read from the system properties "bn.gibbs.chains", "bn.gibbs.burnin", "bn.gibbs.thinning",
+     * "bn.gibbs.samples" (the most samples of each chain), "bn.gibbs.rhat" (0 keeps every sample), "bn.gibbs.mcse"
+     * and "bn.gibbs.seed"
+     *
+     * @param bn instance of BN class
+     */
+    public GibbsSampler(BN bn) {
+        this(bn, Integer.getInteger("bn.gibbs.chains", DEFAULT_CHAINS),
+                Integer.getInteger("bn.gibbs.burnin", DEFAULT_BURN_IN),
+                Integer.getInteger("bn.gibbs.thinning", DEFAULT_THINNING),
+                Long.getLong("bn.gibbs.samples", DEFAULT_SAMPLES),
+                Double.parseDouble(System.getProperty("bn.gibbs.rhat", Double.toString(DEFAULT_R_HAT))),
+                Double.parseDouble(System.getProperty("bn.gibbs.mcse", Double.toString(DEFAULT_MCSE))),
+                Long.getLong("bn.gibbs.seed", 1L));
+    }
+
+    /**
+     * Constructor
+     * The chains read the snapshot of the CPTs in DenseNetwork
+     *
+     * @param bn         instance of BN class
+     * @param chains     the number of chains, at least 2 for R-hat
+     * @param burnIn     the number of sweeps of each chain before its samples are kept
+     * @param thinning   the number of sweeps for each sample kept
+     * @param samples    the most samples kept by each chain
+     * @param targetRHat the R-hat at which the sampling stops, or 0 to keep every sample
+     * @param targetMcse the MCSE which the sampling has to reach as well as the R-hat
+     * @param seed       the seed of the random numbers
+     */
+    public GibbsSampler(BN bn, int chains, int burnIn, int thinning, long samples, double targetRHat,
+                        double targetMcse, long seed) {
+        if (chains < 2 || burnIn < 0 || thinning <= 0 || samples <= 0 || !(targetRHat >= 0) || !(targetMcse >= 0)) {
+            throw new IllegalArgumentException("Invalid settings of the sampler");
+        }
+        this.bn = bn;
+        this.network = new DenseNetwork(bn);
+        this.topologicalOrder = this.network.getTopologicalOrder();
+        this.chains = chains;
+        this.burnIn = burnIn;
+        this.thinning = thinning;
+        this.samples = samples;
+        this.targetRHat = targetRHat;
+        this.targetMcse = targetMcse;
+        this.seed = seed;
+    }
+
+    /**
+     * Computing the distribution of the query variable under the evidence
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimated probability of each outcome of the query variable
+     */
+    @Override
+    public double[] posterior(int query, Evidence evidence) {
+        return estimate(query, evidence).getProbabilities();
+    }
+
+    /**
+     * Estimating the distribution of the query variable under the evidence with a 95% confidence interval
+     * from the MCSE of each outcome
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimated probabilities, the lower ends and the upper ends of the intervals
+     */
+    @Override
+    public double[][] interval(int query, Evidence evidence) {
+        Estimate estimate = estimate(query, evidence);
+        int cardinality = estimate.probabilities.length;
+        double[][] rows = {estimate.getProbabilities(), new double[cardinality], new double[cardinality]};
+        for (int k = 0; k < cardinality; k++) {
+            rows[1][k] = estimate.getLower(k);
+            rows[2][k] = estimate.getUpper(k);
+        }
+        return rows;
+    }
+
+    /**
+     * Estimating the distribution of the query variable under the evidence
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimate with its R-hat and MCSE
+     */
+    public Estimate estimate(int query, Evidence evidence) {
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        Estimate estimate = sample(query, evidence);
+
+        long nanos = System.nanoTime() - start;
+        InferenceMetrics.get().recordQuery(nanos, 0, 0, 0);
+        if (event.shouldCommit()) {
+            event.engine = "GIBBS";
+            event.variable = this.bn.getSymbolTable().getVariable(query).getName();
+            event.evidence = evidence.size();
+            event.commit();
+        }
+        return estimate;
+    }
+
+    private Estimate sample(int query, Evidence evidence) {
+        int cardinality = this.network.getCardinality(query);
+
+        // The query variable is known if it is an evidence
+        if (evidence.contains(query)) {
+            double[] distribution = new double[cardinality];
+            distribution[evidence.getValue(query)] = 1.0;
+            return new Estimate(distribution, 1.0, new double[cardinality], 0);
+        }
+
+        // The ancestors of the query and the evidence, in topological order, and the ones which are resampled
+        BitSet ancestors = RelevanceFilter.removeBarrenNodes(query, evidence, this.bn);
+        boolean[] active = new boolean[this.network.size()];
+        int[] order = new int[ancestors.cardinality()];
+        int[] free = new int[order.length - evidence.size()];
+        int count = 0;
+        int freeCount = 0;
+        int maxCardinality = 1;
+        for (int id : this.topologicalOrder) {
+            if (!ancestors.get(id)) continue;
+            active[id] = true;
+            order[count++] = id;
+            if (!evidence.contains(id)) free[freeCount++] = id;
+            maxCardinality = Math.max(maxCardinality, this.network.getCardinality(id));
+        }
+
+        SplittableRandom root = new SplittableRandom(this.seed);
+        Chain[] states = new Chain[this.chains];
+        for (int c = 0; c < this.chains; c++) {
+            states[c] = new Chain(root.split(), this.network.size(), maxCardinality, cardinality);
+        }
+
+        // Starting each chain from a random state with the evidence, then burning it in
+        ParallelKernels.forEachTask(this.chains, (from, to) -> {
+            for (int c = from; c < to; c++) {
+                Chain chain = states[c];
+                start(chain, order, active, evidence);
+                for (int s = 0; s < this.burnIn; s++) sweep(chain, free, active);
+            }
+        });
+
+        long kept = 0;
+        double rHat = Double.POSITIVE_INFINITY;
+        double[] mcse = new double[cardinality];
+        Arrays.fill(mcse, Double.POSITIVE_INFINITY);
+        while (kept < this.samples) {
+            int round = (int) Math.min(ROUND_SIZE, this.samples - kept);
+            int first = (int) kept;
+            ParallelKernels.forEachTask(this.chains, (from, to) -> {
+                for (int c = from; c < to; c++) {
+                    Chain chain = states[c];
+                    chain.history = Arrays.copyOf(chain.history, first + round);
+                    for (int s = 0; s < round; s++) {
+                        for (int t = 0; t < this.thinning; t++) sweep(chain, free, active);
+                        chain.counts[chain.assignment[query]]++;
+                        chain.history[first + s] = chain.assignment[query];
+                    }
+                }
+            });
+            kept += round;
+
+            rHat = splitRHat(states, (int) kept);
+            mcse = mcse(states, (int) kept);
+            if (this.targetRHat > 0 && rHat <= this.targetRHat && max(mcse) <= this.targetMcse) break;
+        }
+
+        // The mean of the chains
+        double[] probabilities = new double[cardinality];
+        for (Chain chain : states) {
+            for (int k = 0; k < cardinality; k++) probabilities[k] += chain.counts[k];
+        }
+        for (int k = 0; k < cardinality; k++) probabilities[k] /= (double) kept * this.chains;
+        return new Estimate(probabilities, rHat, mcse, kept * this.chains);
+    }
+
+    /**
+     * Setting the chain to a state with the evidence whose probability is positive
+     * Uniform states are tried first, so the chains start far apart, and forward samples are tried
+     * if the CPTs have so many zeros that no uniform state is possible
+     *
+     * @param chain    the chain
+     * @param order    ids of the variables to sample in topological order
+     * @param active   true for the variables which are sampled, indexed by id
+     * @param evidence the evidence variables
+     */
+    private void start(Chain chain, int[] order, boolean[] active, Evidence evidence) {
+        int[] assignment = chain.assignment;
+        for (int attempt = 0; attempt < START_ATTEMPTS; attempt++) {
+            for (int id : order) {
+                assignment[id] = evidence.contains(id) ? evidence.getValue(id)
+                        : chain.random.nextInt(this.network.getCardinality(id));
+            }
+            boolean possible = true;
+            for (int id : order) {
+                possible &= this.network.getTable(id)[this.network.getRow(id, assignment) + assignment[id]] > 0;
+            }
+            if (possible) return;
+        }
+        for (int attempt = 0; attempt < START_ATTEMPTS; attempt++) {
+            boolean possible = true;
+            for (int id : order) {
+                double[] table = this.network.getTable(id);
+                int row = this.network.getRow(id, assignment);
+                if (evidence.contains(id)) {
+                    assignment[id] = evidence.getValue(id);
+                    possible &= table[row + assignment[id]] > 0;
+                } else {
+                    assignment[id] = draw(table, row, this.network.getCardinality(id), 1.0, chain.random);
+                }
+            }
+            if (possible) return;
+        }
+        throw new IllegalStateException("No state with a positive probability was found for the evidence");
+    }
+
+    /**
+     * Drawing each variable which is not an evidence from its distribution given its Markov blanket
+     *
+     * @param chain  the chain
+     * @param free   ids of the variables which are not evidence
+     * @param active true for the variables which are sampled, indexed by id
+     */
+    private void sweep(Chain chain, int[] free, boolean[] active) {
+        int[] assignment = chain.assignment;
+        double[] weights = chain.weights;
+        for (int id : free) {
+            int cardinality = this.network.getCardinality(id);
+            double[] table = this.network.getTable(id);
+            int row = this.network.getRow(id, assignment);
+            for (int x = 0; x < cardinality; x++) weights[x] = table[row + x];
+
+            // Multiplying the probability of each child given the outcome of the variable
+            int[] children = this.network.getChildren(id);
+            int[] strides = this.network.getChildStrides(id);
+            for (int i = 0; i < children.length; i++) {
+                int child = children[i];
+                if (!active[child]) continue;
+                double[] childTable = this.network.getTable(child);
+                int base = this.network.getRow(child, assignment) - assignment[id] * strides[i] + assignment[child];
+                for (int x = 0; x < cardinality; x++) weights[x] *= childTable[base + x * strides[i]];
+            }
+
+            double total = 0;
+            for (int x = 0; x < cardinality; x++) total += weights[x];
+            assignment[id] = draw(weights, 0, cardinality, total, chain.random);
+        }
+    }
+
+    /**
+     * Drawing an outcome in proportion to the weights, the last one takes what rounding leaves over
+     *
+     * @param weights     the weights
+     * @param from        the position of the weight of the first outcome
+     * @param cardinality the number of outcomes
+     * @param total       the sum of the weights
+     * @param random      the random numbers
+     * @return the outcome
+     */
+    private static int draw(double[] weights, int from, int cardinality, double total, SplittableRandom random) {
+        double u = random.nextDouble() * total;
+        int last = cardinality - 1;
+        int value = 0;
+        double cumulative = weights[from];
+        while (value < last && (u >= cumulative || weights[from + value] == 0)) cumulative += weights[from + ++value];
+        return value;
+    }
+
+    /**
+     * The split potential scale reduction (R-hat) for the indicator of each outcome
+     * Each chain is split into its first and its last half, so a chain which is still drifting
+     * disagrees with itself even if every chain drifts the same way
+     *
+     * @param states the chains
+     * @param n      the number of samples of each chain
+     * @return the largest R-hat of the outcomes
+     */
+    private static double splitRHat(Chain[] states, int n) {
+        int half = n / 2;
+        if (half < 2) return Double.POSITIVE_INFINITY;
+        int m = 2 * states.length;
+        int cardinality = states[0].counts.length;
+
+        // The number of samples of each outcome in each half chain
+        long[][] counts = new long[m][cardinality];
+        for (int c = 0; c < states.length; c++) {
+            int[] history = states[c].history;
+            for (int s = 0; s < half; s++) {
+                counts[2 * c][history[s]]++;
+                counts[2 * c + 1][history[n - half + s]]++;
+            }
+        }
+
+        double max = 1.0;
+        for (int k = 0; k < cardinality; k++) {
+            double mean = 0;
+            double within = 0;
+            double[] means = new double[m];
+            for (int c = 0; c < m; c++) {
+                means[c] = (double) counts[c][k] / half;
+                mean += means[c] / m;
+                // The variance of the indicator within the half chain
+                within += means[c] * (1 - means[c]) * half / (half - 1) / m;
+            }
+            double between = 0;
+            for (int c = 0; c < m; c++) between += (means[c] - mean) * (means[c] - mean);
+            between *= (double) half / (m - 1);
+
+            if (within == 0) {
+                // Every half chain kept one outcome, they agree only if it is the same one
+                if (between > 0) return Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double pooled = (half - 1.0) / half * within + between / half;
+            max = Math.max(max, Math.sqrt(pooled / within));
+        }
+        return max;
+    }
+
+    /**
+     * The Monte Carlo standard error of the probability of each outcome by batch means
+     * Each chain is cut into batches of about sqrt(n) samples, which are long enough to be nearly independent
+     * of each other when the chains mix, so the variance of the batch means gives the variance of the estimate
+     * with the autocorrelation of the samples
+     *
+     * @param states the chains
+     * @param n      the number of samples of each chain
+     * @return the MCSE of each outcome
+     */
+    private static double[] mcse(Chain[] states, int n) {
+        int length = Math.max(1, (int) Math.sqrt(n));
+        int batches = n / length;
+        int total = states.length * batches;
+        int cardinality = states[0].counts.length;
+        double[] errors = new double[cardinality];
+        if (total < 2) {
+            Arrays.fill(errors, Double.POSITIVE_INFINITY);
+            return errors;
+        }
+
+        // The number of samples of each outcome in each batch
+        long[][] counts = new long[total][cardinality];
+        for (int c = 0; c < states.length; c++) {
+            int[] history = states[c].history;
+            for (int s = 0; s < batches * length; s++) {
+                counts[c * batches + s / length][history[s]]++;
+            }
+        }
+
+        for (int k = 0; k < cardinality; k++) {
+            double mean = 0;
+            for (long[] batch : counts) mean += (double) batch[k] / length / total;
+            double variance = 0;
+            for (long[] batch : counts) {
+                double d = (double) batch[k] / length - mean;
+                variance += d * d / (total - 1);
+            }
+            // The variance of one batch mean is the variance of the estimate from length samples
+            errors[k] = Math.sqrt(variance / total);
+        }
+        return errors;
+    }
+
+    private static double max(double[] values) {
+        double max = 0;
+        for (double value : values) max = Math.max(max, value);
+        return max;
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * The interface for the algorithms answering queries on BNs
+ */
+public interface InferenceEngine {
+
+    /**
+     * Computing the distribution of the query variable under the evidence
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the probability of each outcome of the query variable
+     */
+    double[] posterior(int query, Evidence evidence);
+}
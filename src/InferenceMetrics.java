@@ -0,0 +1,267 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class for the metrics of the queries answered in this JVM
+ * Every query of VE and JT adds its latency, its operations and its largest factor,
+ * and every QueryCache adds its hits, misses and evictions
+ * The metrics are always counted, and they are registered as the MBean "bn:type=InferenceMetrics"
+ * by registerMBean or when the system property "bn.jmx" is true,
+ * it isn't done by default because starting the platform MBean server delays a single query from the console
+ *
+ * The latencies are counted in buckets which grow by 2^(1/4), so a percentile is within 19% of the exact latency
+ * and recording a query never allocates or locks
+ */
+public final class InferenceMetrics implements InferenceMetricsMBean {
+
+    public static final String OBJECT_NAME = "bn:type=InferenceMetrics";
+
+    /**
+     * The number of buckets for each power of 2 of the latency in nanoseconds
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    private static final int SUB_BITS = 2;
+
+    private static final InferenceMetrics INSTANCE = new InferenceMetrics();
+
+    private static boolean registered;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    private final LongAdder queries = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final LongAdder additions = new LongAdder();
+
+    private final LongAdder multiplications = new LongAdder();
+
+    private final AtomicLong largestFactor = new AtomicLong();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private final LongAdder cacheEvictions = new LongAdder();
+
+    static {
+        if (Boolean.getBoolean("bn.jmx")) registerMBean();
+    }
+
+    private InferenceMetrics() {
+    }
+
+    /**
+     * @return - the metrics of this JVM
+     */
+    public static InferenceMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registering the metrics in the platform MBean server, only the first call registers them
+     *
+     * @return - true if the metrics are registered
+     */
+    public static synchronized boolean registerMBean() {
+        if (!registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+                registered = true;
+            } catch (JMException | SecurityException e) {
+                // The metrics are still counted when the MBean is already registered by another class loader
+            }
+        }
+        return registered;
+    }
+
+    /**
+     * Adding a query answered by an engine
+     *
+     * @param nanos   the latency of the query
+     * @param counter the counter of the query
+     */
+    public void recordQuery(long nanos, Counter counter) {
+        recordQuery(nanos, counter.getNumberOfAdditions(), counter.getNumberOfMultiplies(), counter.getLargestFactor());
+    }
+
+    /**
+     * Adding a query answered by an engine
+     *
+     * @param nanos           the latency of the query
+     * @param additions       the number of additions of the query
+     * @param multiplications the number of multiplications of the query
+     * @param largestFactor   the number of values of the largest factor built by the query
+     */
+    public void recordQuery(long nanos, long additions, long multiplications, long largestFactor) {
+        nanos = Math.max(nanos, 0);
+        this.latencies.incrementAndGet(bucket(nanos));
+        this.queries.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulateAndGet(nanos, Math::max);
+        this.additions.add(additions);
+        this.multiplications.add(multiplications);
+        this.largestFactor.accumulateAndGet(largestFactor, Math::max);
+    }
+
+    public void cacheHit() {
+        this.cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        this.cacheMisses.increment();
+    }
+
+    public void cacheEviction() {
+        this.cacheEvictions.increment();
+    }
+
+    /**
+     * @param nanos a latency
+     * @return the index of the bucket of the latency
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket the index of a bucket
+     * @return the largest latency of the bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS - 1 + SUB_BITS;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public long getQueries() {
+        return this.queries.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        long queries = this.queries.sum();
+        return queries == 0 ? 0.0 : millis(this.totalNanos.sum()) / queries;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latencyPercentileMillis(50);
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return latencyPercentileMillis(90);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latencyPercentileMillis(99);
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return millis(this.maxNanos.get());
+    }
+
+    @Override
+    public double latencyPercentileMillis(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+        long[] counts = new long[this.latencies.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.latencies.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0.0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return millis(Math.min(upperBound(i), this.maxNanos.get()));
+        }
+        return getMaxLatencyMillis();
+    }
+
+    @Override
+    public long getAdditions() {
+        return this.additions.sum();
+    }
+
+    @Override
+    public long getMultiplications() {
+        return this.multiplications.sum();
+    }
+
+    @Override
+    public long getLargestFactor() {
+        return this.largestFactor.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return this.cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return this.cacheMisses.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return this.cacheEvictions.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = this.cacheHits.sum();
+        long total = hits + this.cacheMisses.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < this.latencies.length(); i++) this.latencies.set(i, 0);
+        this.queries.reset();
+        this.totalNanos.reset();
+        this.maxNanos.set(0);
+        this.additions.reset();
+        this.multiplications.reset();
+        this.largestFactor.set(0);
+        this.cacheHits.reset();
+        this.cacheMisses.reset();
+        this.cacheEvictions.reset();
+    }
+
+    /**
+     * Converting to string
+     *
+     * @return string of the metrics
+     */
+    @Override
+    public String toString() {
+        return "queries=" + getQueries() + ",meanMs=" + getMeanLatencyMillis() + ",p50Ms=" + getLatencyP50Millis()
+                + ",p99Ms=" + getLatencyP99Millis() + ",maxMs=" + getMaxLatencyMillis()
+                + ",largestFactor=" + getLargestFactor() + ",cacheHitRate=" + getCacheHitRate();
+    }
+}
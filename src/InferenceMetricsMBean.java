@@ -0,0 +1,81 @@
+/**
+ * The management interface of the metrics of the queries, registered as "bn:type=InferenceMetrics"
+ */
+public interface InferenceMetricsMBean {
+
+    /**
+     * @return - the number of queries answered by the engines
+     */
+    long getQueries();
+
+    /**
+     * @return - the mean latency of the queries in milliseconds
+     */
+    double getMeanLatencyMillis();
+
+    /**
+     * @return - the median latency of the queries in milliseconds
+     */
+    double getLatencyP50Millis();
+
+    /**
+     * @return - the 90th percentile of the latency of the queries in milliseconds
+     */
+    double getLatencyP90Millis();
+
+    /**
+     * @return - the 99th percentile of the latency of the queries in milliseconds
+     */
+    double getLatencyP99Millis();
+
+    /**
+     * @return - the largest latency of a query in milliseconds
+     */
+    double getMaxLatencyMillis();
+
+    /**
+     * @return - the number of additions of every query
+     */
+    long getAdditions();
+
+    /**
+     * @return - the number of multiplications of every query
+     */
+    long getMultiplications();
+
+    /**
+     * @return - the number of values of the largest factor built by a query
+     */
+    long getLargestFactor();
+
+    /**
+     * @return - the number of queries found in a QueryCache
+     */
+    long getCacheHits();
+
+    /**
+     * @return - the number of queries a QueryCache passed to its engine
+     */
+    long getCacheMisses();
+
+    /**
+     * @return - the number of queries removed from a QueryCache to keep it within its limits
+     */
+    long getCacheEvictions();
+
+    /**
+     * @return - the fraction of the queries found in a QueryCache
+     */
+    double getCacheHitRate();
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return the latency of the percentile in milliseconds
+     */
+    double latencyPercentileMillis(double percentile);
+
+    /**
+     * Clearing every metric
+     */
+    void reset();
+}
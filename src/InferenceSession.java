@@ -0,0 +1,160 @@
+import java.util.*;
+
+/**
+ * The class for a session of queries whose evidence changes one variable at a time, e.g. in an interactive tool
+ * The session keeps a junction tree between the queries, so after setEvidence or retractEvidence
+ * only the messages which the changed variable reaches are sent again, not the whole network
+ */
+public class InferenceSession {
+
+    private final BN bn;
+
+    private final JunctionTree tree;
+
+    /**
+     * The value of each evidence variable by id
+     */
+    private final TreeMap<Integer, Integer> observed = new TreeMap<>();
+
+    /**
+     * The evidence built from observed, null after a change
+     */
+    private Evidence evidence;
+
+    /**
+     * Constructor
+     * Compiling the BN into a junction tree
+     *
+     * @param bn instance of BN class
+     */
+    public InferenceSession(BN bn) {
+        this(bn, VariableElimination.DEFAULT_HEURISTIC);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for the triangulation
+     */
+    public InferenceSession(BN bn, EliminationOrder.Heuristic heuristic) {
+        this.bn = bn;
+        this.tree = new JunctionTree(bn, heuristic);
+    }
+
+    /**
+     * Setting the evidence of a variable, replacing its previous value
+     *
+     * @param variable the name of the variable
+     * @param outcome  the name of the outcome
+     */
+    public void setEvidence(String variable, String outcome) {
+        SymbolTable symbols = this.bn.getSymbolTable();
+        int id = symbols.resolveVariable(variable);
+        setEvidence(id, symbols.resolveOutcome(id, outcome));
+    }
+
+    /**
+     * Setting the evidence of a variable, replacing its previous value
+     *
+     * @param id    id of the variable
+     * @param value outcome index of the variable
+     */
+    public synchronized void setEvidence(int id, int value) {
+        int cardinality = this.bn.getSymbolTable().getVariable(id).getCardinality();
+        if (value < 0 || value >= cardinality) {
+            throw new IllegalArgumentException("Invalid outcome index: " + value);
+        }
+        Integer previous = this.observed.put(id, value);
+        if (previous == null || previous != value) this.evidence = null;
+    }
+
+    /**
+     * Retracting the evidence of a variable
+     *
+     * @param variable the name of the variable
+     * @return true if the variable was an evidence
+     */
+    public boolean retractEvidence(String variable) {
+        return retractEvidence(this.bn.getSymbolTable().resolveVariable(variable));
+    }
+
+    /**
+     * Retracting the evidence of a variable
+     *
+     * @param id id of the variable
+     * @return true if the variable was an evidence
+     */
+    public synchronized boolean retractEvidence(int id) {
+        if (this.observed.remove(id) == null) return false;
+        this.evidence = null;
+        return true;
+    }
+
+    /**
+     * Retracting the evidence of every variable
+     */
+    public synchronized void clearEvidence() {
+        if (this.observed.isEmpty()) return;
+        this.observed.clear();
+        this.evidence = null;
+    }
+
+    /**
+     * @return - the current evidence
+     */
+    public synchronized Evidence getEvidence() {
+        if (this.evidence == null) {
+            int[] variables = new int[this.observed.size()];
+            int[] values = new int[this.observed.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : this.observed.entrySet()) {
+                variables[i] = entry.getKey();
+                values[i++] = entry.getValue();
+            }
+            // The evidence doesn't depend on the size of the network, so a change costs as much as its reach
+            this.evidence = Evidence.sparse(variables, values);
+        }
+        return this.evidence;
+    }
+
+    /**
+     * Computing the distribution of the query variable under the current evidence
+     *
+     * @param query id of the query variable
+     * @return the probability of each outcome of the query variable
+     */
+    public synchronized double[] posterior(int query) {
+        return this.tree.posterior(query, getEvidence());
+    }
+
+    /**
+     * Computing the distribution of the query variable under the current evidence
+     *
+     * @param variable the name of the query variable
+     * @return the probability of each outcome of the query variable
+     */
+    public double[] posterior(String variable) {
+        return posterior(this.bn.getSymbolTable().resolveVariable(variable));
+    }
+
+    /**
+     * Computing p(variable=outcome|evidence)
+     *
+     * @param variable the name of the query variable
+     * @param outcome  the name of the outcome
+     * @return the probability
+     */
+    public double probability(String variable, String outcome) {
+        SymbolTable symbols = this.bn.getSymbolTable();
+        int id = symbols.resolveVariable(variable);
+        return posterior(id)[symbols.resolveOutcome(id, outcome)];
+    }
+
+    /**
+     * @return - the junction tree of the session
+     */
+    public JunctionTree getJunctionTree() {
+        return this.tree;
+    }
+}
@@ -0,0 +1,508 @@
+import java.util.*;
+
+/**
+ * The class for the Junction Tree Algorithm
+ * The BN is compiled once into a tree of cliques and the messages between the cliques
+ * are passed in two passes (Shafer-Shenoy), after that the distribution of any variable
+ * is computed from the smallest clique including it
+ *
+ * The messages are kept between the queries. When the evidence changes, only the potentials of the cliques
+ * with a CPT of a changed variable are dropped, with the messages sent away from them,
+ * and a query sends only the messages missing towards the clique of the query variable,
+ * so a change of the evidence costs as much as the part of the tree it reaches
+ */
+public class JunctionTree implements InferenceEngine {
+
+    private final BN bn;
+
+    /**
+     * The variables of each clique sorted by id
+     */
+    private final List<Variable[]> cliques;
+
+    /**
+     * The CPTs assigned to each clique
+     */
+    private final List<List<Factor>> assigned;
+
+    /**
+     * The edges of the tree, each edge is {clique, clique}
+     */
+    private final List<int[]> edges;
+
+    /**
+     * The variables of each edge shared by its cliques
+     */
+    private final List<Variable[]> separators;
+
+    /**
+     * ids of the edges of each clique
+     */
+    private final List<List<Integer>> cliqueEdges;
+
+    /**
+     * The cliques with a CPT including each variable indexed by id, whose potentials depend on its evidence
+     */
+    private final List<List<Integer>> reducedCliques;
+
+    /**
+     * The smallest clique including each variable indexed by id
+     */
+    private final int[] home;
+
+    /**
+     * The cliques in the order of a depth first search from the root of each tree,
+     * with the edge to the parent clique (-1 for roots)
+     */
+    private final int[] visitOrder;
+    private final int[] parentEdge;
+
+    /**
+     * The evidence of the messages and the potentials, null for the ones not computed for it yet,
+     * the message of the edge e from edges[e][0] to edges[e][1] is messages[2e] and the reverse is messages[2e + 1]
+     * A message is only kept while the potentials and the messages it was computed from are kept
+     */
+    private Evidence evidence;
+    private Factor[] messages;
+    private Factor[] potentials;
+
+    // The counter of the query being answered, a new one is taken for each query
+    private Counter counter;
+
+    /**
+     * Constructor
+     * Moralizing, triangulating and building the tree of cliques
+     *
+     * @param bn instance of BN class
+     */
+    public JunctionTree(BN bn) {
+        this(bn, VariableElimination.DEFAULT_HEURISTIC);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for the triangulation
+     */
+    public JunctionTree(BN bn, EliminationOrder.Heuristic heuristic) {
+        this.bn = bn;
+        this.counter = new Counter();
+        SymbolTable symbols = bn.getSymbolTable();
+        int n = symbols.size();
+
+        // Triangulating the moral graph by eliminating every variable,
+        // each variable with its neighbours at the time of elimination forms a clique
+        EliminationOrder eliminationOrder = new EliminationOrder(bn);
+        BitSet all = new BitSet(n);
+        all.set(0, n);
+        int[] order = eliminationOrder.getOrder(all, all, new BitSet(n), heuristic);
+
+        List<Set<Integer>> graph = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) {
+            graph.add(new HashSet<>(eliminationOrder.getNeighbours(id)));
+        }
+
+        List<BitSet> candidates = new ArrayList<>();
+        for (int h : order) {
+            BitSet clique = new BitSet(n);
+            clique.set(h);
+            for (int x : graph.get(h)) clique.set(x);
+            candidates.add(clique);
+
+            for (int x : graph.get(h)) {
+                graph.get(x).remove(h);
+                for (int y : graph.get(h)) {
+                    if (x != y) graph.get(x).add(y);
+                }
+            }
+        }
+
+        // Keeping only the cliques which are not included in another clique,
+        // a clique can only be included in a clique formed before it
+        List<BitSet> maximal = new ArrayList<>();
+        for (BitSet clique : candidates) {
+            boolean included = false;
+            for (BitSet other : maximal) {
+                BitSet rest = (BitSet) clique.clone();
+                rest.andNot(other);
+                if (rest.isEmpty()) {
+                    included = true;
+                    break;
+                }
+            }
+            if (!included) maximal.add(clique);
+        }
+
+        this.cliques = new ArrayList<>();
+        this.assigned = new ArrayList<>();
+        this.cliqueEdges = new ArrayList<>();
+        for (BitSet clique : maximal) {
+            this.cliques.add(toVariables(clique, symbols));
+            this.assigned.add(new ArrayList<>());
+            this.cliqueEdges.add(new ArrayList<>());
+        }
+
+        // Connecting the cliques by a maximum spanning tree on the sizes of the separators (Kruskal),
+        // only the cliques sharing variables are candidates, the others are left as separate trees
+        List<List<Integer>> containing = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) containing.add(new ArrayList<>());
+        for (int i = 0; i < maximal.size(); i++) {
+            BitSet clique = maximal.get(i);
+            for (int id = clique.nextSetBit(0); id >= 0; id = clique.nextSetBit(id + 1)) {
+                containing.get(id).add(i);
+            }
+        }
+        HashMap<Long, Integer> shared = new HashMap<>();
+        for (List<Integer> list : containing) {
+            for (int i = 0; i < list.size(); i++) {
+                for (int j = i + 1; j < list.size(); j++) {
+                    shared.merge((long) list.get(i) * maximal.size() + list.get(j), 1, Integer::sum);
+                }
+            }
+        }
+        List<int[]> pairs = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : shared.entrySet()) {
+            pairs.add(new int[]{entry.getValue(), (int) (entry.getKey() / maximal.size()), (int) (entry.getKey() % maximal.size())});
+        }
+        pairs.sort((x, y) -> x[0] != y[0] ? Integer.compare(y[0], x[0]) : x[1] != y[1] ? Integer.compare(x[1], y[1]) : Integer.compare(x[2], y[2]));
+
+        int[] components = new int[maximal.size()];
+        for (int i = 0; i < components.length; i++) components[i] = i;
+
+        this.edges = new ArrayList<>();
+        this.separators = new ArrayList<>();
+        for (int[] pair : pairs) {
+            int x = find(components, pair[1]);
+            int y = find(components, pair[2]);
+            if (x == y) continue;
+            components[x] = y;
+
+            BitSet separator = (BitSet) maximal.get(pair[1]).clone();
+            separator.and(maximal.get(pair[2]));
+            this.cliqueEdges.get(pair[1]).add(this.edges.size());
+            this.cliqueEdges.get(pair[2]).add(this.edges.size());
+            this.edges.add(new int[]{pair[1], pair[2]});
+            this.separators.add(toVariables(separator, symbols));
+        }
+
+        // Assigning each CPT to the smallest clique including its variables
+        this.reducedCliques = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) this.reducedCliques.add(new ArrayList<>());
+        for (Variable variable : bn.getVariables()) {
+            BitSet family = new BitSet(n);
+            for (Variable v : variable.getCPT().getScope()) family.set(v.getId());
+            int clique = smallestClique(maximal, containing.get(variable.getId()), family);
+            this.assigned.get(clique).add(variable.getCPT());
+            for (int id = family.nextSetBit(0); id >= 0; id = family.nextSetBit(id + 1)) {
+                if (!this.reducedCliques.get(id).contains(clique)) this.reducedCliques.get(id).add(clique);
+            }
+        }
+
+        this.home = new int[n];
+        for (int id = 0; id < n; id++) {
+            BitSet single = new BitSet(n);
+            single.set(id);
+            this.home[id] = smallestClique(maximal, containing.get(id), single);
+        }
+
+        // Ordering the cliques from the roots to the leaves
+        this.visitOrder = new int[maximal.size()];
+        this.parentEdge = new int[maximal.size()];
+        boolean[] visited = new boolean[maximal.size()];
+        int next = 0;
+        for (int root = 0; root < maximal.size(); root++) {
+            if (visited[root]) continue;
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(root);
+            visited[root] = true;
+            this.parentEdge[root] = -1;
+            while (!stack.isEmpty()) {
+                int clique = stack.pop();
+                this.visitOrder[next++] = clique;
+                for (int edge : this.cliqueEdges.get(clique)) {
+                    int other = otherClique(edge, clique);
+                    if (!visited[other]) {
+                        visited[other] = true;
+                        this.parentEdge[other] = edge;
+                        stack.push(other);
+                    }
+                }
+            }
+        }
+
+        this.potentials = new Factor[this.cliques.size()];
+        this.messages = new Factor[2 * this.edges.size()];
+    }
+
+    private static int find(int[] components, int x) {
+        while (components[x] != x) {
+            components[x] = components[components[x]];
+            x = components[x];
+        }
+        return x;
+    }
+
+    private static Variable[] toVariables(BitSet ids, SymbolTable symbols) {
+        Variable[] variables = new Variable[ids.cardinality()];
+        for (int id = ids.nextSetBit(0), i = 0; id >= 0; id = ids.nextSetBit(id + 1)) {
+            variables[i++] = symbols.getVariable(id);
+        }
+        return variables;
+    }
+
+    /**
+     * @param cliques    the variables of each clique
+     * @param candidates the cliques to search
+     * @param variables  the variables to include
+     * @return the smallest clique of the candidates including the variables
+     */
+    private static int smallestClique(List<BitSet> cliques, List<Integer> candidates, BitSet variables) {
+        int best = -1;
+        for (int i : candidates) {
+            BitSet rest = (BitSet) variables.clone();
+            rest.andNot(cliques.get(i));
+            if (rest.isEmpty() && (best < 0 || cliques.get(i).cardinality() < cliques.get(best).cardinality())) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int otherClique(int edge, int clique) {
+        int[] pair = this.edges.get(edge);
+        return pair[0] == clique ? pair[1] : pair[0];
+    }
+
+    /**
+     * @param edge   id of the edge
+     * @param clique the clique sending the message
+     * @return index of the message in messages
+     */
+    private int messageIndex(int edge, int clique) {
+        return this.edges.get(edge)[0] == clique ? 2 * edge : 2 * edge + 1;
+    }
+
+    /**
+     * Passing the messages under the evidence, from the leaves to the roots and back
+     * The messages kept for the previous evidence which the change doesn't reach are not sent again
+     *
+     * @param evidence the evidence variables
+     */
+    public synchronized void calibrate(Evidence evidence) {
+        update(evidence);
+        for (int clique : this.visitOrder) collect(clique);
+    }
+
+    /**
+     * Dropping the potentials and the messages which depend on the variables whose evidence changed
+     *
+     * @param evidence the new evidence
+     */
+    private void update(Evidence evidence) {
+        if (evidence.equals(this.evidence)) return;
+
+        if (this.evidence != null) {
+            // Comparing the evidence variables sorted by id
+            Evidence previous = this.evidence;
+            int i = 0;
+            int j = 0;
+            while (i < previous.size() || j < evidence.size()) {
+                int x = i < previous.size() ? previous.getVariable(i) : Integer.MAX_VALUE;
+                int y = j < evidence.size() ? evidence.getVariable(j) : Integer.MAX_VALUE;
+                if (x == y) {
+                    if (previous.getValueAt(i) != evidence.getValueAt(j)) invalidate(x);
+                    i++;
+                    j++;
+                } else if (x < y) {
+                    invalidate(previous.getVariable(i++));
+                } else {
+                    invalidate(evidence.getVariable(j++));
+                }
+            }
+        }
+        this.evidence = evidence;
+    }
+
+    /**
+     * Dropping the potentials of the cliques with a CPT of the variable and the messages sent away from them,
+     * a dropped message stops the search since the messages after it were dropped with it
+     *
+     * @param id id of the variable whose evidence changed
+     */
+    private void invalidate(int id) {
+        Deque<int[]> stack = new ArrayDeque<>();
+        for (int clique : this.reducedCliques.get(id)) {
+            if (this.potentials[clique] == null) continue;
+            this.potentials[clique] = null;
+            stack.push(new int[]{clique, -1});
+        }
+        while (!stack.isEmpty()) {
+            int[] visit = stack.pop();
+            int clique = visit[0];
+            for (int edge : this.cliqueEdges.get(clique)) {
+                int index = messageIndex(edge, clique);
+                if (edge == visit[1] || this.messages[index] == null) continue;
+                this.messages[index] = null;
+                stack.push(new int[]{otherClique(edge, clique), edge});
+            }
+        }
+    }
+
+    /**
+     * Sending the messages missing towards the clique, from the furthest cliques inwards
+     *
+     * @param clique the clique
+     */
+    private void collect(int clique) {
+        // Searching outwards from the clique up to the messages which are kept
+        List<int[]> missing = new ArrayList<>();
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{clique, -1});
+        while (!stack.isEmpty()) {
+            int[] visit = stack.pop();
+            for (int edge : this.cliqueEdges.get(visit[0])) {
+                int other = otherClique(edge, visit[0]);
+                if (edge == visit[1] || this.messages[messageIndex(edge, other)] != null) continue;
+                missing.add(new int[]{other, edge});
+                stack.push(new int[]{other, edge});
+            }
+        }
+
+        // A message is found before the messages it needs, so they are sent in reverse
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            sendMessage(missing.get(i)[0], missing.get(i)[1], this.evidence);
+        }
+    }
+
+    /**
+     * @param clique the clique
+     * @return the potential of the clique under the current evidence, computed if it was dropped
+     */
+    private Factor getPotential(int clique) {
+        if (this.potentials[clique] == null) {
+            this.potentials[clique] = potential(clique, this.evidence);
+        }
+        return this.potentials[clique];
+    }
+
+    /**
+     * @param clique   the clique
+     * @param evidence the evidence variables
+     * @return the product of the CPTs of the clique reduced by the evidence
+     */
+    private Factor potential(int clique, Evidence evidence) {
+        List<Factor> factors = new ArrayList<>();
+        for (Factor cpt : this.assigned.get(clique)) {
+            factors.add(CPT.updateCPT(evidence, cpt));
+        }
+        if (factors.isEmpty()) return Factor.scalar(1.0);
+        return CPT.integrateFactors(factors, this.counter);
+    }
+
+    /**
+     * Sending the message over the edge, the product of the potential of the clique and
+     * the messages from the other neighbours summed onto the separator
+     *
+     * @param clique   the clique sending the message
+     * @param edge     id of the edge
+     * @param evidence the evidence variables
+     */
+    private void sendMessage(int clique, int edge, Evidence evidence) {
+        List<Factor> factors = new ArrayList<>();
+        factors.add(getPotential(clique));
+        for (int other : this.cliqueEdges.get(clique)) {
+            if (other != edge) factors.add(this.messages[messageIndex(other, otherClique(other, clique))]);
+        }
+        Factor product = CPT.integrateFactors(factors, this.counter);
+
+        List<Variable> eliminated = new ArrayList<>();
+        for (Variable variable : product.getScope()) {
+            if (!contains(this.separators.get(edge), variable)) eliminated.add(variable);
+        }
+        this.messages[messageIndex(edge, clique)] = CPT.eliminate(product, eliminated.toArray(new Variable[0]), this.counter);
+    }
+
+    private static boolean contains(Variable[] variables, Variable variable) {
+        for (Variable v : variables) {
+            if (v.getId() == variable.getId()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computing the distribution of the query variable under the evidence
+     * Only the messages towards the clique of the query variable which the evidence changed are sent again
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the probability of each outcome of the query variable
+     */
+    @Override
+    public synchronized double[] posterior(int query, Evidence evidence) {
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        this.counter = new Counter();
+
+        double[] distribution = computePosterior(query, evidence);
+
+        long nanos = System.nanoTime() - start;
+        InferenceMetrics.get().recordQuery(nanos, this.counter);
+        if (event.shouldCommit()) {
+            event.engine = "JT";
+            event.variable = this.bn.getSymbolTable().getVariable(query).getName();
+            event.evidence = evidence.size();
+            event.additions = this.counter.getNumberOfAdditions();
+            event.multiplications = this.counter.getNumberOfMultiplies();
+            event.largestFactor = this.counter.getLargestFactor();
+            event.commit();
+        }
+        return distribution;
+    }
+
+    private double[] computePosterior(int query, Evidence evidence) {
+        Variable variable = this.bn.getSymbolTable().getVariable(query);
+        if (evidence.contains(query)) {
+            double[] distribution = new double[variable.getCardinality()];
+            distribution[evidence.getValue(query)] = 1.0;
+            return distribution;
+        }
+
+        update(evidence);
+
+        int clique = this.home[query];
+        collect(clique);
+        List<Factor> factors = new ArrayList<>();
+        factors.add(getPotential(clique));
+        for (int edge : this.cliqueEdges.get(clique)) {
+            factors.add(this.messages[messageIndex(edge, otherClique(edge, clique))]);
+        }
+        Factor belief = CPT.integrateFactors(factors, this.counter);
+
+        List<Variable> eliminated = new ArrayList<>();
+        for (Variable v : belief.getScope()) {
+            if (v.getId() != query) eliminated.add(v);
+        }
+        belief = CPT.eliminate(belief, eliminated.toArray(new Variable[0]), this.counter);
+        return VariableElimination.normalize(belief, this.counter).getValues();
+    }
+
+    /**
+     * @return - the number of cliques
+     */
+    public int getCliquesSize() {
+        return this.cliques.size();
+    }
+
+    /**
+     * @return - the number of variables of the largest clique
+     */
+    public int getLargestCliqueSize() {
+        int largest = 0;
+        for (Variable[] clique : this.cliques) {
+            largest = Math.max(largest, clique.length);
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,365 @@
+import java.util.*;
+
+/**
+ * The class for approximate inference by likelihood weighting, for networks too wide for the exact engines
+ * Each sample draws the variables in topological order from their CPTs, the evidence variables are set
+ * to their values and the sample is weighted by the probabilities of them
+ *
+ * The samples are drawn in batches of a fixed size on the pool of ParallelKernels, each batch with its own
+ * SplittableRandom split from the seed in order, and the sums of the batches are added in order,
+ * so an estimate only depends on the seed and the number of samples, not on the threads.
+ * A batch keeps its sums in a few doubles and reuses one assignment, so drawing a sample allocates nothing.
+ * Only the query, the evidence and their ancestors are sampled, the other variables don't change the weights
+ */
+public class LikelihoodWeighting implements SamplingEngine {
+
+    /**
+     * The default number of samples, read from the system property "bn.lw.samples"
+     */
+    public static final long DEFAULT_SAMPLES = 100000;
+
+    /**
+     * The quantile of the normal distribution for the 95% confidence intervals
+     */
+    public static final double Z_95 = 1.959963984540054;
+
+    /**
+     * The number of samples of a batch
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * The numbers of batches drawn before the standard error is checked against the target,
+     * the rounds double from the first to the largest so that a loose target stops early
+     */
+    private static final int FIRST_ROUND = 4;
+
+    private static final int MAX_ROUND = 64;
+
+    private final BN bn;
+
+    /**
+     * The CPTs copied as dense tables
+     */
+    private final DenseNetwork network;
+
+    /**
+     * ids of the variables in topological order
+     */
+    private final int[] topologicalOrder;
+
+    private final long samples;
+
+    private final double targetError;
+
+    private final long seed;
+
+    /**
+     * The estimate of the distribution of a query
+     */
+    public static final class Estimate {
+        private final double[] probabilities;
+        private final double[] standardErrors;
+        private final long samples;
+        private final double effectiveSamples;
+
+        private Estimate(double[] probabilities, double[] standardErrors, long samples, double effectiveSamples) {
+            this.probabilities = probabilities;
+            this.standardErrors = standardErrors;
+            this.samples = samples;
+            this.effectiveSamples = effectiveSamples;
+        }
+
+        /**
+         * @return - the estimated probability of each outcome of the query variable
+         */
+        public double[] getProbabilities() {
+            return this.probabilities.clone();
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the estimated probability
+         */
+        public double getProbability(int outcome) {
+            return this.probabilities[outcome];
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the standard error of the estimated probability
+         */
+        public double getStandardError(int outcome) {
+            return this.standardErrors[outcome];
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the lower end of the 95% confidence interval
+         */
+        public double getLower(int outcome) {
+            return Math.max(0.0, this.probabilities[outcome] - Z_95 * this.standardErrors[outcome]);
+        }
+
+        /**
+         * @param outcome the outcome index
+         * @return the upper end of the 95% confidence interval
+         */
+        public double getUpper(int outcome) {
+            return Math.min(1.0, this.probabilities[outcome] + Z_95 * this.standardErrors[outcome]);
+        }
+
+        /**
+         * @return - the largest standard error of the outcomes
+         */
+        public double getMaxStandardError() {
+            double max = 0;
+            for (double error : this.standardErrors) max = Math.max(max, error);
+            return max;
+        }
+
+        /**
+         * @return - the number of samples drawn
+         */
+        public long getSamples() {
+            return this.samples;
+        }
+
+        /**
+         * @return - the number of unweighted samples worth as much as the weighted ones, (sum w)^2 / sum w^2
+         */
+        public double getEffectiveSamples() {
+            return this.effectiveSamples;
+        }
+
+        /**
+         * Converting to string
+         *
+         * @return string of each probability with its 95% confidence interval
+         */
+        @Override
+        public String toString() {
+            StringJoiner out = new StringJoiner(",", "[", "]");
+            for (int k = 0; k < this.probabilities.length; k++) {
+                out.add(String.format("%.5f (%.5f-%.5f)", this.probabilities[k], getLower(k), getUpper(k)));
+            }
+            return out + " samples=" + this.samples + " effective=" + Math.round(this.effectiveSamples);
+        }
+    }
+
+    /**
+     * Constructor
+     * The number of samples, the target standard error and the seed are read from the system properties
+     * "bn.lw.samples", "bn.lw.error" (0 draws every sample) and "bn.lw.seed"
+     *
+     * @param bn instance of BN class
+     */
+    public LikelihoodWeighting(BN bn) {
+        this(bn, Long.getLong("bn.lw.samples", DEFAULT_SAMPLES),
+                Double.parseDouble(System.getProperty("bn.lw.error", "0")), Long.getLong("bn.lw.seed", 1L));
+    }
+
+    /**
+     * Constructor
+     * The samples are drawn from the snapshot of the CPTs in DenseNetwork
+     *
+     * @param bn          instance of BN class
+     * @param samples     the number of samples, or the most samples drawn if a target is given
+     * @param targetError the standard error at which the sampling stops, or 0 to draw every sample
+     * @param seed        the seed of the random numbers
+     */
+    public LikelihoodWeighting(BN bn, long samples, double targetError, long seed) {
+        if (samples <= 0 || !(targetError >= 0)) {
+            throw new IllegalArgumentException("The number of samples must be positive and the target error not negative");
+        }
+        this.bn = bn;
+        this.samples = samples;
+        this.targetError = targetError;
+        this.seed = seed;
+
+        this.network = new DenseNetwork(bn);
+        this.topologicalOrder = this.network.getTopologicalOrder();
+    }
+
+    /**
+     * Computing the distribution of the query variable under the evidence
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimated probability of each outcome of the query variable
+     */
+    @Override
+    public double[] posterior(int query, Evidence evidence) {
+        return estimate(query, evidence).getProbabilities();
+    }
+
+    /**
+     * Estimating the distribution of the query variable under the evidence with a 95% confidence interval
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimated probabilities, the lower ends and the upper ends of the intervals
+     */
+    @Override
+    public double[][] interval(int query, Evidence evidence) {
+        Estimate estimate = estimate(query, evidence);
+        int cardinality = estimate.probabilities.length;
+        double[][] rows = {estimate.getProbabilities(), new double[cardinality], new double[cardinality]};
+        for (int k = 0; k < cardinality; k++) {
+            rows[1][k] = estimate.getLower(k);
+            rows[2][k] = estimate.getUpper(k);
+        }
+        return rows;
+    }
+
+    /**
+     * Estimating the distribution of the query variable under the evidence
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimate with its standard errors
+     */
+    public Estimate estimate(int query, Evidence evidence) {
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        Estimate estimate = sample(query, evidence);
+
+        long nanos = System.nanoTime() - start;
+        InferenceMetrics.get().recordQuery(nanos, 0, 0, 0);
+        if (event.shouldCommit()) {
+            event.engine = "LW";
+            event.variable = this.bn.getSymbolTable().getVariable(query).getName();
+            event.evidence = evidence.size();
+            event.commit();
+        }
+        return estimate;
+    }
+
+    private Estimate sample(int query, Evidence evidence) {
+        int cardinality = this.network.getCardinality(query);
+
+        // The query variable is known if it is an evidence
+        if (evidence.contains(query)) {
+            double[] distribution = new double[cardinality];
+            distribution[evidence.getValue(query)] = 1.0;
+            return new Estimate(distribution, new double[cardinality], 0, 0);
+        }
+
+        // The ancestors of the query and the evidence in topological order, with the values of the evidence
+        BitSet ancestors = RelevanceFilter.removeBarrenNodes(query, evidence, this.bn);
+        int[] order = new int[ancestors.cardinality()];
+        int count = 0;
+        for (int id : this.topologicalOrder) {
+            if (ancestors.get(id)) order[count++] = id;
+        }
+        int[] clamped = new int[this.network.size()];
+        Arrays.fill(clamped, -1);
+        for (int i = 0; i < evidence.size(); i++) clamped[evidence.getVariable(i)] = evidence.getValueAt(i);
+
+        // The sums of all the batches: sum w, sum w^2, then sum w and sum w^2 of the samples of each outcome
+        double[] sums = new double[2 + 2 * cardinality];
+        SplittableRandom root = new SplittableRandom(this.seed);
+        long drawn = 0;
+        int round = FIRST_ROUND;
+        while (drawn < this.samples) {
+            long remaining = this.samples - drawn;
+            int batches = (int) Math.min(round, (remaining + BATCH_SIZE - 1) / BATCH_SIZE);
+            round = Math.min(2 * round, MAX_ROUND);
+            SplittableRandom[] randoms = new SplittableRandom[batches];
+            int[] sizes = new int[batches];
+            for (int b = 0; b < batches; b++) {
+                randoms[b] = root.split();
+                sizes[b] = (int) Math.min(BATCH_SIZE, remaining - (long) b * BATCH_SIZE);
+            }
+
+            double[][] batchSums = new double[batches][];
+            ParallelKernels.forEachTask(batches, (from, to) -> {
+                for (int b = from; b < to; b++) {
+                    batchSums[b] = sampleBatch(query, order, clamped, randoms[b], sizes[b]);
+                }
+            });
+            for (int b = 0; b < batches; b++) {
+                for (int i = 0; i < sums.length; i++) sums[i] += batchSums[b][i];
+                drawn += sizes[b];
+            }
+
+            if (this.targetError > 0 && sums[0] > 0 && toEstimate(sums, cardinality, drawn).getMaxStandardError() <= this.targetError) {
+                break;
+            }
+        }
+        return toEstimate(sums, cardinality, drawn);
+    }
+
+    /**
+     * Drawing a batch of samples
+     *
+     * @param query   id of the query variable
+     * @param order   ids of the variables to sample in topological order
+     * @param clamped the value of each evidence variable indexed by id, -1 for the others
+     * @param random  the random numbers of the batch
+     * @param size    the number of samples
+     * @return sum w, sum w^2, then sum w and sum w^2 of the samples of each outcome of the query variable
+     */
+    private double[] sampleBatch(int query, int[] order, int[] clamped, SplittableRandom random, int size) {
+        int cardinality = this.network.getCardinality(query);
+        double[] sums = new double[2 + 2 * cardinality];
+        int[] assignment = new int[this.network.size()];
+
+        for (int s = 0; s < size; s++) {
+            double weight = 1.0;
+            for (int id : order) {
+                int row = this.network.getRow(id, assignment);
+                double[] table = this.network.getTable(id);
+
+                int value = clamped[id];
+                if (value >= 0) {
+                    assignment[id] = value;
+                    weight *= table[row + value];
+                    if (weight == 0) break;
+                } else {
+                    // Drawing an outcome from the row, the last one takes what rounding leaves over
+                    double u = random.nextDouble();
+                    int last = this.network.getCardinality(id) - 1;
+                    value = 0;
+                    double cumulative = table[row];
+                    while (value < last && u >= cumulative) cumulative += table[row + ++value];
+                    assignment[id] = value;
+                }
+            }
+            if (weight == 0) continue;
+
+            double squared = weight * weight;
+            int outcome = assignment[query];
+            sums[0] += weight;
+            sums[1] += squared;
+            sums[2 + outcome] += weight;
+            sums[2 + cardinality + outcome] += squared;
+        }
+        return sums;
+    }
+
+    /**
+     * The estimate of the ratio sum w I / sum w, with the variance sum w^2 (I - p)^2 / (sum w)^2 of the delta method
+     *
+     * @param sums        sum w, sum w^2, then sum w and sum w^2 of the samples of each outcome
+     * @param cardinality the number of outcomes of the query variable
+     * @param drawn       the number of samples drawn
+     * @return estimate
+     */
+    private static Estimate toEstimate(double[] sums, int cardinality, long drawn) {
+        double total = sums[0];
+        double squared = sums[1];
+        double[] probabilities = new double[cardinality];
+        double[] errors = new double[cardinality];
+        for (int k = 0; k < cardinality; k++) {
+            double p = sums[2 + k] / total;
+            double variance = sums[2 + cardinality + k] * (1 - 2 * p) + p * p * squared;
+            probabilities[k] = p;
+            errors[k] = Math.sqrt(Math.max(variance, 0)) / total;
+        }
+        double effective = squared == 0 ? 0 : total * total / squared;
+        return new Estimate(probabilities, errors, drawn, effective);
+    }
+}
@@ -1,6 +1,4 @@
-import org.w3c.dom.Document;
-
-import java.io.File;
+import java.io.*;
 import java.text.DecimalFormat;
 import java.util.*;
 
@@ -9,6 +7,10 @@ import java.util.*;
  */
 class Main {
 
+    // The limits of the cache of the queries in BATCH
+    private static final int BATCH_CACHE_ENTRIES = 10000;
+    private static final long BATCH_CACHE_BYTES = 64L * 1024 * 1024;
+
     public static void main(String[] args) {
 
         // Validate file.
@@ -19,12 +21,51 @@ class Main {
             System.exit(-1);
         }
 
-        // Constructing BN instance
-        Document doc = FileManager.readXML(filePath);
-        List<Variable> variables = new ArrayList<>(FileManager.buildVariables(doc));
+        // Constructing BN instance, a compiled file is mapped instead of parsed
+        List<Variable> variables;
+        try {
+            if (BinaryNetwork.isCompiled(filePath)) {
+                variables = new ArrayList<>(BinaryNetwork.map(filePath));
+            } else {
+                variables = new ArrayList<>(FileManager.loadVariables(filePath));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage() + "\n");
+            System.exit(-1);
+            return;
+        }
         BN bn = new BN(variables);
+
+        // Writing the compiled file given in args[2]
+        if (args[0].equals("COMPILE")) {
+            if (args.length < 3) {
+                System.out.println("Error: No output file given for COMPILE.\n");
+                System.exit(-1);
+            }
+            try {
+                BinaryNetwork.write(bn, args[2]);
+            } catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+                System.exit(-1);
+            }
+            return;
+        }
         Scanner sc = new Scanner(System.in);
 
+        // The inference engine, Variable Elimination by default
+        int engineArg = args[0].equals("BATCH") ? 3 : 2;
+        String engine = args.length > engineArg ? args[engineArg] : "VE";
+        if (!engine.equals("VE") && !engine.equals("JT") && !engine.equals("LW")
+                && !engine.equals("GIBBS")) {
+            System.out.println("Invalid args[" + engineArg + "]");
+            System.exit(-1);
+        }
+        // The order of P2 is an elimination order, which the other engines have no use for
+        if (args[0].equals("P2") && !engine.equals("VE")) {
+            System.out.println("Error: P2 gives an elimination order, which only VE uses.\n");
+            System.exit(-1);
+        }
+
         switch (args[0]) {
             case "P1": {
                 // construct the network based on the specification in args[1]
@@ -32,9 +73,7 @@ class Main {
                 String variable = query[0];
                 String value = query[1];
 
-                List<Double> results = VariableElimination.VE(variable, value, new ArrayList<>(), new ArrayList<>(), bn);
-                double result = results.get(0);
-                printResult(result);
+                query(engine, variable, value, new ArrayList<>(), new ArrayList<>(), bn);
             }
             break;
 
@@ -47,9 +86,7 @@ class Main {
                 List<String> order = new ArrayList<>(Arrays.asList(inputOrder));
 
                 // execute query of p(variable=value|evidence) with an order
-                List<Double> results = VariableElimination.VE(variable, value, new ArrayList<>(), order, bn);
-                double result = results.get(0);
-                printResult(result);
+                query(engine, variable, value, new ArrayList<>(), order, bn);
             }
             break;
 
@@ -60,9 +97,7 @@ class Main {
                 String value = query[1];
                 ArrayList<String[]> evidence = getEvidence(sc);
                 // execute query of p(variable=value|evidence) with an order
-                List<Double> results = VariableElimination.VE(variable, value, evidence, new ArrayList<>(), bn);
-                double result = results.get(0);
-                printResult(result);
+                query(engine, variable, value, evidence, new ArrayList<>(), bn);
             }
             break;
 
@@ -104,9 +139,90 @@ class Main {
                 String[] query = getQueriedNode(sc);
                 String variable = query[0];
                 String value = query[1];
-                List<Double> results = VariableElimination.VE(variable, value, new ArrayList<>(), new ArrayList<>(), bn);
-                double result = results.get(0);
-                printResult(result);
+                query(engine, variable, value, new ArrayList<>(), new ArrayList<>(), bn);
+            }
+            break;
+
+            case "EXPLAIN": {
+                // print the plan of VE for a query without running it, the evidence and the order may be empty
+                String[] query = getQueriedNode(sc);
+                ArrayList<String[]> evidence = getEvidence(sc);
+                evidence.removeIf(pair -> pair.length != 2);
+                List<String> order = new ArrayList<>(Arrays.asList(getOrder(sc)));
+                order.removeIf(String::isBlank);
+
+                SymbolTable symbols = bn.getSymbolTable();
+                try {
+                    int[] orderIds = new int[order.size()];
+                    for (int i = 0; i < orderIds.length; i++) {
+                        orderIds[i] = symbols.resolveVariable(order.get(i).trim());
+                    }
+                    QueryPlan plan = QueryPlan.explain(symbols.resolveVariable(query[0]), Evidence.resolve(evidence, symbols),
+                            orderIds, bn, VariableElimination.DEFAULT_HEURISTIC);
+                    System.out.println(plan);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Error: " + e.getMessage() + "\n");
+                    System.exit(-1);
+                }
+            }
+            break;
+
+            case "SESSION": {
+                // change the evidence and query line by line until an empty line,
+                // "+A:T" sets the evidence of A, "-A" retracts it and "D:T" prints p(D=T|evidence)
+                InferenceSession session = new InferenceSession(bn);
+                while (sc.hasNextLine()) {
+                    String line = sc.nextLine().trim();
+                    if (line.isEmpty()) break;
+                    try {
+                        if (line.startsWith("+")) {
+                            String[] ev = line.substring(1).split(":");
+                            if (ev.length != 2) throw new IllegalArgumentException("Invalid evidence: " + line);
+                            session.setEvidence(ev[0], ev[1]);
+                        } else if (line.startsWith("-")) {
+                            session.retractEvidence(line.substring(1));
+                        } else {
+                            String[] query = line.split(":");
+                            if (query.length != 2) throw new IllegalArgumentException("Invalid query: " + line);
+                            printResult(session.probability(query[0], query[1]));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                    }
+                }
+            }
+            break;
+
+            case "BATCH": {
+                // answer the queries in args[2] line by line, "-" reads them from the standard input
+                if (args.length < 3) {
+                    System.out.println("Error: No query file given for BATCH.\n");
+                    System.exit(-1);
+                }
+                // the queries run on a snapshot, in parallel if a pool is given in args[4], e.g. FIXED:8
+                CompiledNetwork network = CompiledNetwork.compile(bn);
+                InferenceEngine inferenceEngine = engine.equals("VE") ? network : createEngine(engine, bn);
+                // the estimates of a sampled engine are written with their intervals, which the cache doesn't keep
+                if (!(inferenceEngine instanceof SamplingEngine)) {
+                    inferenceEngine = new QueryCache(inferenceEngine, bn, BATCH_CACHE_ENTRIES, BATCH_CACHE_BYTES);
+                }
+                BatchRunner runner = new BatchRunner(network, inferenceEngine);
+                QueryExecutor executor = null;
+                try {
+                    if (args.length > 4) executor = QueryExecutor.parse(args[4]);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    System.out.println("Error: " + e.getMessage() + "\n");
+                    System.exit(-1);
+                }
+                try (Reader in = args[2].equals("-") ? new InputStreamReader(System.in) : new FileReader(args[2]);
+                     Writer out = new OutputStreamWriter(System.out)) {
+                    runner.run(in, out, executor);
+                } catch (IOException e) {
+                    System.out.println("Error: " + e.getMessage());
+                    System.exit(-1);
+                } finally {
+                    if (executor != null) executor.close();
+                }
             }
             break;
 
@@ -120,6 +236,59 @@ class Main {
         sc.close();
     }
 
+    // method to create the engine given by its name
+    private static InferenceEngine createEngine(String engine, BN bn) {
+        if (engine.equals("JT")) {
+            return new JunctionTree(bn);
+        }
+        if (engine.equals("LW")) {
+            return new LikelihoodWeighting(bn);
+        }
+        if (engine.equals("GIBBS")) {
+            return new GibbsSampler(bn);
+        }
+        return new VariableElimination(bn);
+    }
+
+    // method to execute and print query of p(variable=value|evidence) with the given engine,
+    // a sampled engine prints the 95% confidence interval of its estimate on the next line
+    private static void query(String engine, String variable, String value, ArrayList<String[]> evidence, List<String> order, BN bn) {
+
+        // Resolving the names first, an unknown name or a variable given twice in the evidence is an error
+        SymbolTable symbols = bn.getSymbolTable();
+        int id;
+        int outcome;
+        int[] orderIds = new int[order.size()];
+        Evidence resolved;
+        try {
+            id = symbols.resolveVariable(variable);
+            outcome = symbols.resolveOutcome(id, value);
+            for (int i = 0; i < orderIds.length; i++) {
+                orderIds[i] = symbols.resolveVariable(order.get(i));
+            }
+            resolved = Evidence.resolve(evidence, symbols);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage() + "\n");
+            System.exit(-1);
+            return;
+        }
+
+        InferenceEngine inferenceEngine;
+        if (order.isEmpty()) {
+            inferenceEngine = createEngine(engine, bn);
+        } else {
+            inferenceEngine = new VariableElimination(bn, orderIds, VariableElimination.DEFAULT_HEURISTIC);
+        }
+        if (inferenceEngine instanceof SamplingEngine) {
+            double[][] interval = ((SamplingEngine) inferenceEngine).interval(id, resolved);
+            printResult(interval[0][outcome]);
+            DecimalFormat dd = new DecimalFormat("#0.00000");
+            System.out.println("95% confidence interval: " + dd.format(interval[1][outcome]) + " - " + dd.format(interval[2][outcome]));
+            return;
+        }
+        printResult(inferenceEngine.posterior(id, resolved)[outcome]);
+    }
+
     // method to obtain the evidence from the user
     private static ArrayList<String[]> getEvidence(Scanner sc) {
 
@@ -0,0 +1,317 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * The class for generating synthetic BNs in XMLBIF 0.3 for testing how the engines scale
+ * The same arguments and seed always write the same file
+ *
+ * Usage: java NetworkGenerator RANDOM|CHAIN|GRID|LAYERED|POLYTREE nodes output.xml [key=value ...]
+ * seed=1           the seed of the random numbers
+ * parents=3        the maximum number of parents of a variable (RANDOM, LAYERED)
+ * cardinality=2-4  the number of outcomes of each variable, a number or a range
+ * window=8         the parents of a variable are taken from the previous window variables (RANDOM),
+ *                  which keeps the treewidth at most the window
+ * width=16         the number of columns of GRID or the number of variables of each layer of LAYERED
+ * deterministic=0  the fraction of the variables with a deterministic CPT, whose rows have a single 1.0
+ */
+public class NetworkGenerator {
+
+    /**
+     * The families of the structures
+     */
+    public enum Family {
+        // Parents taken at random from a window of the previous variables
+        RANDOM,
+        // Each variable has the previous one as its parent
+        CHAIN,
+        // Each cell of a grid has the cells above and to the left as its parents
+        GRID,
+        // Each variable has parents taken at random from the previous layer
+        LAYERED,
+        // A random tree with random directions of the edges, so that there is at most one path between two variables
+        POLYTREE
+    }
+
+    /**
+     * Every probability is a multiple of 1 / RESOLUTION, so each row of a CPT sums to 1 exactly
+     */
+    private static final int RESOLUTION = 1024;
+
+    private final Family family;
+    private final int nodes;
+    private final int maxParents;
+    private final int minCardinality;
+    private final int maxCardinality;
+    private final int window;
+    private final int width;
+    private final long seed;
+    private final double deterministic;
+
+    private Random random;
+    private int[] cardinalities;
+    private List<List<Integer>> parents;
+
+    /**
+     * Constructor
+     *
+     * @param family         the family of the structure
+     * @param nodes          the number of variables
+     * @param maxParents     the maximum number of parents of a variable
+     * @param minCardinality the minimum number of outcomes of a variable
+     * @param maxCardinality the maximum number of outcomes of a variable
+     * @param window         the number of previous variables the parents are taken from
+     * @param width          the number of columns of a grid or variables of a layer
+     * @param seed           the seed of the random numbers
+     */
+    public NetworkGenerator(Family family, int nodes, int maxParents, int minCardinality, int maxCardinality,
+                            int window, int width, long seed) {
+        this(family, nodes, maxParents, minCardinality, maxCardinality, window, width, seed, 0);
+    }
+
+    /**
+     * Constructor of a generator making some of the CPTs deterministic
+     *
+     * @param family         the family of the structure
+     * @param nodes          the number of variables
+     * @param maxParents     the maximum number of parents of a variable
+     * @param minCardinality the minimum number of outcomes of a variable
+     * @param maxCardinality the maximum number of outcomes of a variable
+     * @param window         the number of previous variables the parents are taken from
+     * @param width          the number of columns of a grid or variables of a layer
+     * @param seed           the seed of the random numbers
+     * @param deterministic  the fraction of the variables with a deterministic CPT
+     */
+    public NetworkGenerator(Family family, int nodes, int maxParents, int minCardinality, int maxCardinality,
+                            int window, int width, long seed, double deterministic) {
+        if (nodes <= 0 || maxParents < 0 || minCardinality < 2 || maxCardinality < minCardinality
+                || window <= 0 || width <= 0 || !(deterministic >= 0 && deterministic <= 1)) {
+            throw new IllegalArgumentException("Invalid settings of the generator");
+        }
+        this.family = family;
+        this.nodes = nodes;
+        this.maxParents = maxParents;
+        this.minCardinality = minCardinality;
+        this.maxCardinality = maxCardinality;
+        this.window = window;
+        this.width = width;
+        this.seed = seed;
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Generating the structure and the CPTs and writing them as XMLBIF
+     *
+     * @param out the writer of the file
+     * @throws IOException if writing fails
+     */
+    public void generate(Writer out) throws IOException {
+        this.random = new Random(this.seed);
+        this.cardinalities = new int[this.nodes];
+        this.parents = new ArrayList<>(this.nodes);
+        for (int i = 0; i < this.nodes; i++) {
+            this.cardinalities[i] = this.minCardinality + this.random.nextInt(this.maxCardinality - this.minCardinality + 1);
+            this.parents.add(new ArrayList<>());
+        }
+        generateStructure();
+
+        BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<BIF VERSION=\"0.3\">\n");
+        writer.write("<NETWORK>\n");
+        writer.write("<NAME>" + this.family + "-" + this.nodes + "</NAME>\n");
+        writer.write("\n");
+
+        for (int i = 0; i < this.nodes; i++) {
+            writer.write("<VARIABLE TYPE=\"nature\">\n");
+            writer.write("\t<NAME>" + name(i) + "</NAME>\n");
+            for (int k = 0; k < this.cardinalities[i]; k++) {
+                writer.write("\t<OUTCOME>" + outcome(this.cardinalities[i], k) + "</OUTCOME>\n");
+            }
+            writer.write("</VARIABLE>\n\n");
+        }
+
+        for (int i = 0; i < this.nodes; i++) {
+            // The fraction is only drawn when it is set, so the files of the other settings stay the same
+            boolean deterministic = this.deterministic > 0 && this.random.nextDouble() < this.deterministic;
+            writer.write("<DEFINITION>\n");
+            writer.write("\t<FOR>" + name(i) + "</FOR>\n");
+            int rows = 1;
+            for (int parent : this.parents.get(i)) {
+                writer.write("\t<GIVEN>" + name(parent) + "</GIVEN>\n");
+                rows *= this.cardinalities[parent];
+            }
+            writer.write("\t<TABLE>");
+            for (int row = 0; row < rows; row++) {
+                if (deterministic) {
+                    writeDeterministicRow(writer, this.cardinalities[i], row == 0);
+                } else {
+                    writeRow(writer, this.cardinalities[i], row == 0);
+                }
+            }
+            writer.write("</TABLE>\n");
+            writer.write("</DEFINITION>\n\n");
+        }
+
+        writer.write("</NETWORK>\n");
+        writer.write("</BIF>\n");
+        writer.flush();
+    }
+
+    /**
+     * Choosing the parents of each variable by the family
+     */
+    private void generateStructure() {
+        switch (this.family) {
+            case RANDOM:
+                for (int i = 1; i < this.nodes; i++) {
+                    int from = Math.max(0, i - this.window);
+                    pickParents(i, from, i);
+                }
+                break;
+            case CHAIN:
+                for (int i = 1; i < this.nodes; i++) {
+                    this.parents.get(i).add(i - 1);
+                }
+                break;
+            case GRID:
+                for (int i = 0; i < this.nodes; i++) {
+                    if (i >= this.width) this.parents.get(i).add(i - this.width);
+                    if (i % this.width > 0) this.parents.get(i).add(i - 1);
+                }
+                break;
+            case LAYERED:
+                for (int i = this.width; i < this.nodes; i++) {
+                    int layer = i / this.width;
+                    pickParents(i, (layer - 1) * this.width, layer * this.width);
+                }
+                break;
+            default:
+                // Connecting each variable to one of the previous ones in either direction,
+                // the previous one becomes the parent if it already has maxParents parents
+                for (int i = 1; i < this.nodes; i++) {
+                    int other = this.random.nextInt(i);
+                    if (this.random.nextBoolean() || this.parents.get(other).size() >= Math.max(1, this.maxParents)) {
+                        this.parents.get(i).add(other);
+                    } else {
+                        this.parents.get(other).add(i);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Taking up to maxParents distinct parents of a variable from the range from (inclusive) to (exclusive)
+     *
+     * @param child the variable
+     * @param from  the first candidate
+     * @param to    the end of the candidates
+     */
+    private void pickParents(int child, int from, int to) {
+        int count = this.random.nextInt(Math.min(this.maxParents, to - from) + 1);
+        // Floyd's sampling of count distinct candidates
+        TreeSet<Integer> chosen = new TreeSet<>();
+        for (int j = to - count; j < to; j++) {
+            int candidate = from + this.random.nextInt(j - from + 1);
+            chosen.add(chosen.contains(candidate) ? j : candidate);
+        }
+        this.parents.get(child).addAll(chosen);
+    }
+
+    /**
+     * Writing a row of random probabilities, each outcome is at least 1 / RESOLUTION so that no evidence is impossible
+     *
+     * @param writer      the writer of the file
+     * @param cardinality the number of outcomes
+     * @param first       true if it is the first row of the table
+     */
+    private void writeRow(BufferedWriter writer, int cardinality, boolean first) throws IOException {
+        int[] weights = new int[cardinality];
+        Arrays.fill(weights, 1);
+        for (int k = cardinality; k < RESOLUTION; k++) {
+            // Skewing the rows so that the outcomes are not all alike
+            double u = this.random.nextDouble();
+            weights[(int) (u * u * cardinality)]++;
+        }
+        for (int k = 0; k < cardinality; k++) {
+            if (!first || k > 0) writer.write(' ');
+            writer.write(Double.toString((double) weights[k] / RESOLUTION));
+        }
+    }
+
+    /**
+     * Writing a row with 1.0 for a random outcome and 0.0 for the others
+     *
+     * @param writer      the writer of the file
+     * @param cardinality the number of outcomes
+     * @param first       true if it is the first row of the table
+     */
+    private void writeDeterministicRow(BufferedWriter writer, int cardinality, boolean first) throws IOException {
+        int outcome = this.random.nextInt(cardinality);
+        for (int k = 0; k < cardinality; k++) {
+            if (!first || k > 0) writer.write(' ');
+            writer.write(k == outcome ? "1.0" : "0.0");
+        }
+    }
+
+    private static String name(int i) {
+        return "X" + i;
+    }
+
+    private static String outcome(int cardinality, int k) {
+        if (cardinality == 2) return k == 0 ? "T" : "F";
+        return "S" + k;
+    }
+
+    /**
+     * Parsing a cardinality given as a number or a range, e.g. "2" or "2-4"
+     *
+     * @param value the cardinality
+     * @return the minimum and the maximum
+     */
+    private static int[] parseRange(String value) {
+        String[] split = value.split("-");
+        int min = Integer.parseInt(split[0]);
+        int max = split.length > 1 ? Integer.parseInt(split[1]) : min;
+        return new int[]{min, max};
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: java NetworkGenerator RANDOM|CHAIN|GRID|LAYERED|POLYTREE nodes output.xml [key=value ...]");
+            System.exit(-1);
+        }
+
+        Family family = Family.valueOf(args[0]);
+        int nodes = Integer.parseInt(args[1]);
+        String output = args[2];
+
+        // The default settings
+        HashMap<String, String> options = new HashMap<>();
+        options.put("seed", "1");
+        options.put("parents", "3");
+        options.put("cardinality", "2");
+        options.put("window", "8");
+        options.put("width", "16");
+        options.put("deterministic", "0");
+
+        for (int i = 3; i < args.length; i++) {
+            String[] option = args[i].split("=");
+            if (option.length != 2 || !options.containsKey(option[0])) {
+                System.out.println("Invalid option: " + args[i]);
+                System.exit(-1);
+            }
+            options.put(option[0], option[1]);
+        }
+
+        int[] cardinality = parseRange(options.get("cardinality"));
+        NetworkGenerator generator = new NetworkGenerator(family, nodes,
+                Integer.parseInt(options.get("parents")), cardinality[0], cardinality[1],
+                Integer.parseInt(options.get("window")), Integer.parseInt(options.get("width")),
+                Long.parseLong(options.get("seed")), Double.parseDouble(options.get("deterministic")));
+
+        try (Writer writer = new BufferedWriter(new FileWriter(output))) {
+            generator.generate(writer);
+        }
+    }
+}
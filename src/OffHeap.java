@@ -0,0 +1,78 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * The class for allocating the values of large factors off-heap with the Foreign Function & Memory API
+ * The backend is SegmentStorage in src-ffm, which needs JDK 22 (or JDK 21 with --enable-preview),
+ * and the factors stay on the heap if it isn't on the class path
+ * The number of values from which a factor is allocated off-heap is read from the system property
+ * "bn.offheap.threshold" and can be changed by the setter
+ */
+public class OffHeap {
+
+    /**
+     * The default number of values from which a factor is allocated off-heap (128 MB of doubles)
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 24;
+
+    private static volatile int threshold = Integer.getInteger("bn.offheap.threshold", DEFAULT_THRESHOLD);
+
+    // The constructor of SegmentStorage taking the number of values and whether they are floats,
+    // or null if the backend isn't available
+    private static final MethodHandle ALLOCATE = findBackend();
+
+    private OffHeap() {
+    }
+
+    private static MethodHandle findBackend() {
+        try {
+            Class<?> backend = Class.forName("SegmentStorage");
+            return MethodHandles.publicLookup().findConstructor(backend, MethodType.methodType(void.class, int.class, boolean.class))
+                    .asType(MethodType.methodType(ValueStorage.class, int.class, boolean.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return - true if factors can be allocated off-heap on this JVM
+     */
+    public static boolean isAvailable() {
+        return ALLOCATE != null;
+    }
+
+    /**
+     * @return - the number of values from which a factor is allocated off-heap
+     */
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold the number of values from which a factor is allocated off-heap
+     */
+    public static void setThreshold(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("The threshold must be positive");
+        }
+        OffHeap.threshold = threshold;
+    }
+
+    /**
+     * Allocating zeroed values off-heap in the current precision if the factor is large enough
+     *
+     * @param size the number of values
+     * @return storage, or null if the values should stay on the heap
+     */
+    public static ValueStorage allocate(int size) {
+        if (ALLOCATE == null || size < threshold) return null;
+        try {
+            return (ValueStorage) ALLOCATE.invokeExact(size, Precision.isSingle());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
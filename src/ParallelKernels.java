@@ -0,0 +1,180 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The class for splitting the index range of a large factor into chunks running on a ForkJoinPool
+ * Factors smaller than the threshold stay on the calling thread
+ * The threshold and the number of threads are read from the system properties
+ * "bn.parallel.threshold" and "bn.parallel.threads", and can be changed by the setters
+ */
+public class ParallelKernels {
+
+    /**
+     * The default number of entries of a factor from which the kernels run in parallel
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 20;
+
+    /**
+     * The smallest number of entries given to one chunk
+     */
+    private static final int MIN_CHUNK = 1 << 14;
+
+    /**
+     * The number of chunks for each thread, so that a slow chunk can be balanced by stealing
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static volatile int threshold = Integer.getInteger("bn.parallel.threshold", DEFAULT_THRESHOLD);
+
+    private static volatile int parallelism = Integer.getInteger("bn.parallel.threads", Runtime.getRuntime().availableProcessors());
+
+    private static ForkJoinPool pool;
+
+    /**
+     * The kernel computing the entries from (inclusive) to (exclusive) of a factor
+     */
+    public interface Range {
+        void apply(int from, int to);
+    }
+
+    private ParallelKernels() {
+    }
+
+    /**
+     * @return - the number of entries of a factor from which the kernels run in parallel
+     */
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold the number of entries of a factor from which the kernels run in parallel
+     */
+    public static void setThreshold(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("The threshold must be positive");
+        }
+        ParallelKernels.threshold = threshold;
+    }
+
+    /**
+     * @return - the number of threads of the kernels
+     */
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Changing the number of threads
+     * The kernels started after the call run on a new pool, the kernels already running on the old pool
+     * finish on it, and the old pool stops once they are done
+     *
+     * @param parallelism the number of threads of the kernels, 1 keeps every factor on the calling thread
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        ForkJoinPool old = pool;
+        if (old != null && old.getParallelism() != parallelism) {
+            pool = new ForkJoinPool(parallelism);
+            old.shutdown();
+        }
+        ParallelKernels.parallelism = parallelism;
+    }
+
+    /**
+     * @param size the number of entries to compute
+     * @return - true if the entries are computed in parallel
+     */
+    public static boolean isParallel(int size) {
+        return parallelism > 1 && size >= threshold;
+    }
+
+    /**
+     * Computing the entries 0 to size of a factor, in chunks on the pool if the factor is large
+     * Each entry is computed by exactly one chunk, so the result doesn't depend on the chunks
+     *
+     * @param size   the number of entries
+     * @param kernel the kernel computing a range of the entries
+     */
+    public static void forEach(int size, Range kernel) {
+        if (!isParallel(size)) {
+            kernel.apply(0, size);
+            return;
+        }
+        invoke(kernel, size, Math.max(MIN_CHUNK, size / (parallelism * CHUNKS_PER_THREAD)));
+    }
+
+    /**
+     * Running the tasks 0 to tasks on the pool, each task on its own, e.g. the batches of a sampler
+     *
+     * @param tasks  the number of tasks
+     * @param kernel the kernel running the tasks from (inclusive) to (exclusive)
+     */
+    public static void forEachTask(int tasks, Range kernel) {
+        if (parallelism <= 1 || tasks <= 1) {
+            kernel.apply(0, tasks);
+            return;
+        }
+        invoke(kernel, tasks, 1);
+    }
+
+    /**
+     * Running the kernel on the range 0 to size in chunks on the pool
+     *
+     * @param kernel the kernel
+     * @param size   the end of the range
+     * @param chunk  the largest range of a chunk
+     */
+    private static void invoke(Range kernel, int size, int chunk) {
+        while (true) {
+            ForkJoinPool current = getPool();
+            try {
+                current.invoke(new Chunk(kernel, 0, size, chunk));
+                return;
+            } catch (RejectedExecutionException e) {
+                // The pool was replaced by setParallelism after it was taken, nothing ran on it
+                if (current == getPool()) throw e;
+            }
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * The task splitting its range in halves until the range is as small as a chunk
+     */
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Range kernel;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        private Chunk(Range kernel, int from, int to, int chunk) {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.chunk) {
+                this.kernel.apply(this.from, this.to);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Chunk(this.kernel, this.from, middle, this.chunk),
+                    new Chunk(this.kernel, middle, this.to, this.chunk));
+        }
+    }
+}
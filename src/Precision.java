@@ -0,0 +1,48 @@
+/**
+ * The precision the values of the CPTs and the intermediate factors are stored in
+ * The precision is read from the system property "bn.precision" (double or float) and can be changed by the setter
+ * The kernels compute every product and sum in double either way, so in float precision
+ * each value is rounded once when it is stored
+ */
+public enum Precision {
+
+    // 8 bytes for each value
+    DOUBLE,
+    // 4 bytes for each value, about 7 significant digits
+    FLOAT;
+
+    private static volatile Precision current = parse(System.getProperty("bn.precision", "double"));
+
+    /**
+     * @param name "double" or "float", in any case
+     * @return the precision
+     */
+    public static Precision parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown precision: " + name + " (expected double or float)");
+        }
+    }
+
+    /**
+     * @return - the precision new factors are stored in
+     */
+    public static Precision get() {
+        return current;
+    }
+
+    /**
+     * @param precision the precision new factors are stored in, the factors made before keep theirs
+     */
+    public static void set(Precision precision) {
+        current = precision;
+    }
+
+    /**
+     * @return - true if new factors are stored as floats
+     */
+    public static boolean isSingle() {
+        return current == FLOAT;
+    }
+}
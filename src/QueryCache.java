@@ -0,0 +1,209 @@
+import java.util.*;
+
+/**
+ * The class for caching the distributions of queries in front of an inference engine
+ * The least recently used query is evicted when the number of entries or the bytes go over the limits
+ */
+public class QueryCache implements InferenceEngine {
+
+    /**
+     * The estimated bytes of an entry besides the values of the distribution and the evidence of the key,
+     * the key, the arrays and the entry of the map
+     */
+    private static final long ENTRY_OVERHEAD = 160;
+
+    private final InferenceEngine engine;
+
+    private final BN bn;
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<Key, double[]> entries;
+
+    private long bytes;
+
+    private long version;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * The query variable and the evidence sorted by id, as pairs of id and outcome index
+     * The evidence is copied since an Evidence keeps an array as large as the network
+     */
+    private static final class Key {
+        private final int query;
+        private final int[] evidence;
+
+        private Key(int query, Evidence evidence) {
+            this.query = query;
+            this.evidence = new int[2 * evidence.size()];
+            for (int i = 0; i < evidence.size(); i++) {
+                this.evidence[2 * i] = evidence.getVariable(i);
+                this.evidence[2 * i + 1] = evidence.getValueAt(i);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return this.query == key.query && Arrays.equals(this.evidence, key.evidence);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.query + Arrays.hashCode(this.evidence);
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param engine     the engine computing the distributions which are not cached
+     * @param bn         the BN the engine runs on
+     * @param maxEntries the maximum number of queries to keep
+     * @param maxBytes   the maximum estimated bytes of the queries to keep
+     */
+    public QueryCache(InferenceEngine engine, BN bn, int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("The limits of the cache must be positive");
+        }
+        this.engine = engine;
+        this.bn = bn;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.version = bn.getVersion();
+    }
+
+    /**
+     * Computing the distribution of the query variable under the evidence,
+     * or returning it from the cache if the same query was computed before
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the probability of each outcome of the query variable
+     */
+    @Override
+    public double[] posterior(int query, Evidence evidence) {
+        Key key = new Key(query, evidence);
+
+        synchronized (this) {
+            invalidateIfChanged();
+            double[] distribution = this.entries.get(key);
+            if (distribution != null) {
+                this.hits++;
+                InferenceMetrics.get().cacheHit();
+                return distribution.clone();
+            }
+            this.misses++;
+            InferenceMetrics.get().cacheMiss();
+        }
+
+        // Computing outside of the lock so that other queries are not blocked
+        long version = this.bn.getVersion();
+        double[] distribution = this.engine.posterior(query, evidence);
+
+        synchronized (this) {
+            invalidateIfChanged();
+            if (version == this.version && !this.entries.containsKey(key)) {
+                this.entries.put(key, distribution.clone());
+                this.bytes += bytesOf(key, distribution);
+                evict();
+            }
+        }
+        return distribution;
+    }
+
+    /**
+     * Clearing the cache if a CPT of the BN has changed since the entries were computed
+     */
+    private void invalidateIfChanged() {
+        long version = this.bn.getVersion();
+        if (version != this.version) {
+            clear();
+            this.version = version;
+        }
+    }
+
+    /**
+     * Removing the least recently used entries until the cache is within its limits
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, double[]>> iterator = this.entries.entrySet().iterator();
+        while ((this.entries.size() > this.maxEntries || this.bytes > this.maxBytes) && iterator.hasNext()) {
+            Map.Entry<Key, double[]> eldest = iterator.next();
+            this.bytes -= bytesOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            this.evictions++;
+            InferenceMetrics.get().cacheEviction();
+        }
+    }
+
+    private static long bytesOf(Key key, double[] distribution) {
+        return ENTRY_OVERHEAD + 8L * distribution.length + 4L * key.evidence.length;
+    }
+
+    /**
+     * Removing every entry
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * @return - the number of queries found in the cache
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return - the number of queries computed by the engine
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return - the number of queries removed to keep the cache within its limits
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return - the number of queries in the cache
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return - the estimated bytes of the queries in the cache
+     */
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Converting to string
+     *
+     * @return string of the statistics of the cache
+     */
+    @Override
+    public synchronized String toString() {
+        long total = this.hits + this.misses;
+        double rate = total == 0 ? 0.0 : (double) this.hits / total;
+        return "entries=" + this.entries.size() + ",bytes=" + this.bytes + ",hits=" + this.hits
+                + ",misses=" + this.misses + ",evictions=" + this.evictions + ",hitRate=" + rate;
+    }
+}
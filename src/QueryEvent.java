@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event of a query answered by an inference engine, its duration is the latency of the query
+ * Recording it costs nothing when the event is not enabled, e.g.
+ * java -XX:StartFlightRecording=settings=profile,filename=bn.jfr Main P1 xml/BNC.xml
+ */
+@Name("bn.Query")
+@Label("Query")
+@Category("Bayesian Networks")
+@Description("A query answered by an inference engine")
+@StackTrace(false)
+public class QueryEvent extends Event {
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Query Variable")
+    String variable;
+
+    @Label("Evidence Variables")
+    int evidence;
+
+    @Label("Additions")
+    long additions;
+
+    @Label("Multiplications")
+    long multiplications;
+
+    @Label("Largest Factor")
+    @Description("The number of values of the largest factor built")
+    long largestFactor;
+}
@@ -0,0 +1,153 @@
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The class for running independent queries in parallel on a pool of threads
+ * Each query gets its own Counter and the network is an immutable snapshot,
+ * so the answers are the same as running the queries one by one
+ */
+public class QueryExecutor implements AutoCloseable {
+
+    /**
+     * The kinds of the pool of threads
+     */
+    public enum Pool {
+        // A work-stealing ForkJoinPool
+        FORK_JOIN,
+        // A pool with a fixed number of threads
+        FIXED,
+        // A new virtual thread for each query (JDK 21, or JDK 19 and 20 with --enable-preview)
+        VIRTUAL
+    }
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    /**
+     * Constructor
+     *
+     * @param pool    the kind of the pool
+     * @param threads the number of threads, ignored by VIRTUAL
+     */
+    public QueryExecutor(Pool pool, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        this.threads = threads;
+        switch (pool) {
+            case FORK_JOIN:
+                this.executor = new ForkJoinPool(threads);
+                break;
+            case FIXED:
+                this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "query-executor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                break;
+            default:
+                this.executor = newVirtualThreadExecutor();
+                break;
+        }
+    }
+
+    /**
+     * Creating the executor of virtual threads without depending on the JDK at compile time
+     *
+     * @return executor
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available on this JDK", e);
+        }
+    }
+
+    /**
+     * Parsing a pool given like "FIXED:8", "FORK_JOIN" or "VIRTUAL",
+     * the number of threads is the number of processors if it is not given
+     *
+     * @param pool the pool and the number of threads
+     * @return executor
+     * @throws IllegalArgumentException if the pool or the number of threads is invalid
+     * @throws IllegalStateException    if the pool is VIRTUAL and the JDK has no virtual threads
+     */
+    public static QueryExecutor parse(String pool) {
+        String[] split = pool.split(":");
+        Pool kind;
+        try {
+            kind = Pool.valueOf(split[0]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid pool: " + split[0] + ", expected one of " + Arrays.toString(Pool.values()));
+        }
+        int threads;
+        try {
+            threads = split.length > 1 ? Integer.parseInt(split[1]) : Runtime.getRuntime().availableProcessors();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of threads: " + split[1]);
+        }
+        return new QueryExecutor(kind, threads);
+    }
+
+    /**
+     * @return - the number of threads of the pool
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Running the tasks in parallel and waiting for all of them
+     *
+     * @param tasks the tasks
+     * @return the results in the order of the tasks
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        try {
+            List<Future<T>> futures = this.executor.invokeAll(tasks);
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while running the queries");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Computing the distributions of the queries in parallel
+     *
+     * @param network   the snapshot of the BN
+     * @param queries   ids of the query variables
+     * @param evidences the evidence of each query
+     * @return the distribution of each query in the order of the queries
+     */
+    public List<double[]> posteriors(CompiledNetwork network, int[] queries, Evidence[] evidences) {
+        List<Callable<double[]>> tasks = new ArrayList<>(queries.length);
+        for (int i = 0; i < queries.length; i++) {
+            int query = queries[i];
+            Evidence evidence = evidences[i];
+            tasks.add(() -> network.posterior(query, evidence, new int[0], new Counter()));
+        }
+        return invokeAll(tasks);
+    }
+
+    /**
+     * Stopping the threads of the pool
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+}
@@ -0,0 +1,428 @@
+import java.util.*;
+
+/**
+ * The class for explaining how Variable Elimination would answer a query without building any factor
+ * The elimination is run on the scopes of the factors only, in the same order and with the same joins as VE
+ * (lazy or not, see VariableElimination.isLazy), so the sizes and the numbers of operations are the ones VE would count.
+ * Sparse factors are taken as dense, which they never exceed
+ */
+public class QueryPlan {
+
+    /**
+     * A step of the plan, joining factors and summing out variables
+     */
+    public static final class Step {
+        private final String variables;
+        private final Variable[] scope;
+        private final int factors;
+        private final long product;
+        private final long multiplications;
+        private final long additions;
+
+        private Step(String variables, Variable[] scope, int factors, long product, long multiplications, long additions) {
+            this.variables = variables;
+            this.scope = scope;
+            this.factors = factors;
+            this.product = product;
+            this.multiplications = multiplications;
+            this.additions = additions;
+        }
+
+        /**
+         * @return - the names of the variables summed out, separated by commas
+         */
+        public String getVariables() {
+            return this.variables;
+        }
+
+        /**
+         * @return - the scope of the factor left by the step
+         */
+        public Variable[] getScope() {
+            return this.scope.clone();
+        }
+
+        /**
+         * @return - the number of values of the factor left by the step
+         */
+        public long getSize() {
+            return size(this.scope);
+        }
+
+        /**
+         * @return - the number of factors joined by the step
+         */
+        public int getFactors() {
+            return this.factors;
+        }
+
+        /**
+         * @return - the number of values of the product of the factors joined, whether it is built or not
+         */
+        public long getProduct() {
+            return this.product;
+        }
+
+        public long getMultiplications() {
+            return this.multiplications;
+        }
+
+        public long getAdditions() {
+            return this.additions;
+        }
+    }
+
+    private final String query;
+
+    private final boolean lazy;
+
+    private final List<Step> steps = new ArrayList<>();
+
+    private long multiplications;
+
+    private long additions;
+
+    private long largestFactor;
+
+    private int inducedWidth;
+
+    // The operations of the step being planned
+    private long stepMultiplications;
+
+    private long stepAdditions;
+
+    private QueryPlan(String query, boolean lazy) {
+        this.query = query;
+        this.lazy = lazy;
+    }
+
+    /**
+     * Planning a query like VariableElimination.posterior
+     *
+     * @param query     id of the query variable
+     * @param evidence  the evidence variables
+     * @param order     ids of the variables in order for Variable Elimination, or empty
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for computing the order if no order is given
+     * @return the plan
+     */
+    public static QueryPlan explain(int query, Evidence evidence, int[] order, BN bn, EliminationOrder.Heuristic heuristic) {
+        SymbolTable symbols = bn.getSymbolTable();
+        Variable queryVariable = symbols.getVariable(query);
+        QueryPlan plan = new QueryPlan(queryVariable.getName(), VariableElimination.isLazy());
+
+        // The query variable is known if it is an evidence
+        if (evidence.contains(query)) return plan;
+
+        BitSet relevant = RelevanceFilter.getRelevantVariables(query, evidence, bn);
+        if (order.length == 0) {
+            order = new EliminationOrder(bn).getOrder(relevant, query, evidence, heuristic);
+        }
+
+        // The scopes of the CPTs without the evidence variables
+        List<Variable[]> factors = new ArrayList<>();
+        for (int id = relevant.nextSetBit(0); id >= 0; id = relevant.nextSetBit(id + 1)) {
+            List<Variable> scope = new ArrayList<>();
+            for (Variable variable : symbols.getVariable(id).getCPT().getScope()) {
+                if (!evidence.contains(variable.getId())) scope.add(variable);
+            }
+            factors.add(scope.toArray(new Variable[0]));
+        }
+
+        for (int h : order) {
+            if (h == query || evidence.contains(h)) continue;
+            plan.eliminateBucket(factors, symbols.getVariable(h));
+        }
+
+        factors.removeIf(scope -> size(scope) <= 1);
+
+        Variable[] last;
+        plan.startStep();
+        int joined = factors.size();
+        long product;
+        if (plan.lazy) {
+            last = plan.eliminateRemaining(factors, query);
+            // Every factor left is over the query variable only
+            joined = Math.max(factors.size(), 1);
+            product = size(last);
+        } else {
+            last = factors.isEmpty() ? new Variable[0] : plan.join(factors);
+            product = size(last);
+        }
+
+        // Summing out every variable except the query variable at once
+        List<Variable> kept = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (Variable variable : last) {
+            if (variable.getId() == query) {
+                kept.add(variable);
+            } else {
+                others.add(variable.getName());
+            }
+        }
+        Variable[] marginal = kept.toArray(new Variable[0]);
+        if (!others.isEmpty()) plan.built(marginal);
+        plan.stepAdditions += size(last) - size(marginal);
+        plan.width(last);
+
+        // Normalizing
+        plan.stepAdditions += size(marginal) - 1;
+        plan.addStep(String.join(",", others), marginal, joined, product);
+        return plan;
+    }
+
+    /**
+     * Joining the factors mentioning a variable and summing it out, like VE does
+     *
+     * @param factors  the scopes of the factors
+     * @param variable the variable to sum out
+     */
+    private void eliminateBucket(List<Variable[]> factors, Variable variable) {
+        List<Variable[]> cpts = new ArrayList<>();
+        int last = -1;
+        for (int i = 0; i < factors.size(); i++) {
+            if (contains(factors.get(i), variable)) {
+                cpts.add(factors.get(i));
+                factors.set(i, null);
+                last = i;
+            }
+        }
+        if (cpts.isEmpty()) return;
+
+        startStep();
+        Variable[] product = union(cpts);
+        width(product);
+
+        Variable[] result;
+        if (this.lazy) {
+            // Joining every factor but one and summing out while multiplying with the last one
+            List<Variable[]> pair = cpts;
+            if (cpts.size() > 2) {
+                List<Variable[]> rest = new ArrayList<>(cpts);
+                Variable[] aside = rest.remove(setAside(cpts));
+                pair = Arrays.asList(join(rest), aside);
+            }
+            result = without(union(pair), variable);
+            built(result);
+            long summed = variable.getCardinality();
+            this.stepMultiplications += (pair.size() - 1) * summed * size(result);
+            this.stepAdditions += (summed - 1) * size(result);
+        } else {
+            Variable[] joined = join(cpts);
+            result = without(joined, variable);
+            built(result);
+            this.stepAdditions += size(joined) - size(result);
+        }
+
+        factors.set(last, result);
+        factors.removeIf(Objects::isNull);
+        addStep(variable.getName(), result, cpts.size(), size(product));
+    }
+
+    /**
+     * Eliminating every variable except the query variable one by one, the one with the smallest result first
+     *
+     * @param factors the scopes of the factors left
+     * @param query   id of the query variable
+     * @return the scope of the product of the factors left over the query variable
+     */
+    private Variable[] eliminateRemaining(List<Variable[]> factors, int query) {
+        while (true) {
+            Variable best = null;
+            long bestSize = Long.MAX_VALUE;
+            for (Variable[] scope : factors) {
+                for (Variable variable : scope) {
+                    if (variable.getId() == query) continue;
+                    long size = eliminatedSize(factors, variable);
+                    if (size < bestSize) {
+                        best = variable;
+                        bestSize = size;
+                    }
+                }
+            }
+            if (best == null) break;
+            eliminateBucket(factors, best);
+            startStep();
+        }
+
+        if (factors.isEmpty()) return new Variable[0];
+        if (factors.size() == 1) return factors.get(0);
+        return join(factors);
+    }
+
+    /**
+     * Joining factors in the order of CPT.integrateFactors, the two smallest first
+     *
+     * @param factors the scopes of the factors
+     * @return the scope of the product
+     */
+    private Variable[] join(List<Variable[]> factors) {
+        Variable[] factor = factors.get(0);
+        List<Variable[]> rest = new ArrayList<>(factors.subList(1, factors.size()));
+        while (!rest.isEmpty()) {
+            rest.add(factor);
+            rest.sort(Comparator.comparingLong(QueryPlan::size).thenComparingInt(QueryPlan::idSum));
+            factor = union(Arrays.asList(rest.get(0), rest.get(1)));
+            built(factor);
+            this.stepMultiplications += size(factor);
+            rest = new ArrayList<>(rest.subList(2, rest.size()));
+        }
+        return factor;
+    }
+
+    /**
+     * @param cpts the scopes of the factors mentioning a variable
+     * @return the index of the factor whose absence leaves the smallest product of the others
+     */
+    private static int setAside(List<Variable[]> cpts) {
+        int best = 0;
+        long bestSize = Long.MAX_VALUE;
+        for (int i = 0; i < cpts.size(); i++) {
+            List<Variable[]> others = new ArrayList<>(cpts);
+            others.remove(i);
+            long size = size(union(others));
+            if (size < bestSize) {
+                best = i;
+                bestSize = size;
+            }
+        }
+        return best;
+    }
+
+    private static long eliminatedSize(List<Variable[]> factors, Variable variable) {
+        List<Variable[]> cpts = new ArrayList<>();
+        for (Variable[] scope : factors) {
+            if (contains(scope, variable)) cpts.add(scope);
+        }
+        return size(without(union(cpts), variable));
+    }
+
+    private void startStep() {
+        this.stepMultiplications = 0;
+        this.stepAdditions = 0;
+    }
+
+    private void addStep(String variables, Variable[] scope, int factors, long product) {
+        this.steps.add(new Step(variables, scope, factors, product, this.stepMultiplications, this.stepAdditions));
+        this.multiplications += this.stepMultiplications;
+        this.additions += this.stepAdditions;
+    }
+
+    private void built(Variable[] scope) {
+        this.largestFactor = Math.max(this.largestFactor, size(scope));
+    }
+
+    private void width(Variable[] scope) {
+        this.inducedWidth = Math.max(this.inducedWidth, scope.length - 1);
+    }
+
+    /**
+     * @param scopes the scopes of factors
+     * @return the variables of the scopes in the order they appear
+     */
+    private static Variable[] union(List<Variable[]> scopes) {
+        List<Variable> variables = new ArrayList<>();
+        for (Variable[] scope : scopes) {
+            for (Variable variable : scope) {
+                if (!variables.contains(variable)) variables.add(variable);
+            }
+        }
+        return variables.toArray(new Variable[0]);
+    }
+
+    private static Variable[] without(Variable[] scope, Variable variable) {
+        List<Variable> variables = new ArrayList<>();
+        for (Variable v : scope) {
+            if (v.getId() != variable.getId()) variables.add(v);
+        }
+        return variables.toArray(new Variable[0]);
+    }
+
+    private static boolean contains(Variable[] scope, Variable variable) {
+        for (Variable v : scope) {
+            if (v.getId() == variable.getId()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param scope the variables of a factor
+     * @return the number of values of the factor, saturated at Long.MAX_VALUE
+     */
+    private static long size(Variable[] scope) {
+        long size = 1;
+        for (Variable variable : scope) {
+            if (size > Long.MAX_VALUE / variable.getCardinality()) return Long.MAX_VALUE;
+            size *= variable.getCardinality();
+        }
+        return size;
+    }
+
+    private static int idSum(Variable[] scope) {
+        int sum = 0;
+        for (Variable variable : scope) sum += variable.getId();
+        return sum;
+    }
+
+    /**
+     * @return - the steps in order
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(this.steps);
+    }
+
+    public long getMultiplications() {
+        return this.multiplications;
+    }
+
+    public long getAdditions() {
+        return this.additions;
+    }
+
+    /**
+     * @return - the number of values of the largest factor VE would build
+     */
+    public long getLargestFactor() {
+        return this.largestFactor;
+    }
+
+    /**
+     * @return - the largest number of variables joined with a variable when it is summed out
+     */
+    public int getInducedWidth() {
+        return this.inducedWidth;
+    }
+
+    /**
+     * @return - true if a factor would have more values than a factor can hold
+     */
+    public boolean isTooLarge() {
+        return this.largestFactor > Integer.MAX_VALUE;
+    }
+
+    /**
+     * Converting to string
+     *
+     * @return string of a line for each step and the totals
+     */
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append("Plan of ").append(this.query).append(this.lazy ? " (lazy)" : "").append('\n');
+        out.append("step,eliminated,factors,product,scope,size,multiplications,additions\n");
+        for (int i = 0; i < this.steps.size(); i++) {
+            Step step = this.steps.get(i);
+            StringJoiner scope = new StringJoiner(" ");
+            for (Variable variable : step.scope) scope.add(variable.getName());
+            out.append(i + 1).append(',').append(step.variables).append(',').append(step.factors).append(',')
+                    .append(step.product).append(',').append(scope).append(',').append(step.getSize()).append(',')
+                    .append(step.multiplications).append(',').append(step.additions).append('\n');
+        }
+        out.append("Largest factor: ").append(this.largestFactor)
+                .append(isTooLarge() ? " (too large for a factor)" : "").append('\n');
+        out.append("Induced width: ").append(this.inducedWidth).append('\n');
+        out.append("Multiplications: ").append(this.multiplications).append('\n');
+        out.append("Additions: ").append(this.additions);
+        return out.toString();
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.*;
+
+/**
+ * The class for finding the variables whose CPTs are needed for a query
+ */
+public class RelevanceFilter {
+
+    /**
+     * Finding the variables whose CPTs are needed for the query under the evidence
+     * Barren nodes are removed first and then the variables d-separated from the query are dropped
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @param bn       instance of BN class
+     * @return ids of the relevant variables
+     */
+    public static BitSet getRelevantVariables(int query, Evidence evidence, BN bn) {
+        BitSet nodes = removeBarrenNodes(query, evidence, bn);
+        return bayesBall(query, evidence, nodes, bn);
+    }
+
+    /**
+     * Removing barren nodes repeatedly, a barren node is a leaf which is neither the query nor an evidence
+     * What is left is the set of the query, the evidence and their ancestors
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @param bn       instance of BN class
+     * @return ids of the variables left
+     */
+    public static BitSet removeBarrenNodes(int query, Evidence evidence, BN bn) {
+        SymbolTable symbols = bn.getSymbolTable();
+        BitSet nodes = new BitSet(symbols.size());
+
+        // Walking up from the query and evidence variables
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(query);
+        for (int i = 0; i < evidence.size(); i++) {
+            stack.push(evidence.getVariable(i));
+        }
+        while (!stack.isEmpty()) {
+            int id = stack.pop();
+            if (nodes.get(id)) continue;
+            nodes.set(id);
+            for (Variable parent : bn.getParents().get(symbols.getVariable(id).getName())) {
+                if (!nodes.get(parent.getId())) stack.push(parent.getId());
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Running Bayes-ball from the query to find the requisite variables
+     * A variable is requisite if the ball reaches its top, i.e. its CPT is needed
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @param nodes    ids of the variables the ball can visit
+     * @param bn       instance of BN class
+     * @return ids of the requisite variables
+     */
+    public static BitSet bayesBall(int query, Evidence evidence, BitSet nodes, BN bn) {
+        SymbolTable symbols = bn.getSymbolTable();
+        BitSet top = new BitSet(symbols.size());
+        BitSet bottom = new BitSet(symbols.size());
+
+        // Each entry is {id, 1 if the ball comes from a child or 0 if it comes from a parent}
+        Deque<int[]> schedule = new ArrayDeque<>();
+        schedule.push(new int[]{query, 1});
+
+        while (!schedule.isEmpty()) {
+            int[] visit = schedule.pop();
+            int id = visit[0];
+            boolean fromChild = visit[1] == 1;
+            String name = symbols.getVariable(id).getName();
+            boolean observed = evidence.contains(id);
+
+            if (fromChild && !observed) {
+                // Passing the ball to the parents and the children
+                if (!top.get(id)) {
+                    top.set(id);
+                    for (Variable parent : bn.getParents().get(name)) {
+                        if (nodes.get(parent.getId())) schedule.push(new int[]{parent.getId(), 1});
+                    }
+                }
+                if (!bottom.get(id)) {
+                    bottom.set(id);
+                    for (Variable child : bn.getChildren().get(name)) {
+                        if (nodes.get(child.getId())) schedule.push(new int[]{child.getId(), 0});
+                    }
+                }
+            } else if (!fromChild) {
+                if (observed) {
+                    // Bouncing the ball back to the parents
+                    if (!top.get(id)) {
+                        top.set(id);
+                        for (Variable parent : bn.getParents().get(name)) {
+                            if (nodes.get(parent.getId())) schedule.push(new int[]{parent.getId(), 1});
+                        }
+                    }
+                } else if (!bottom.get(id)) {
+                    // Passing the ball to the children
+                    bottom.set(id);
+                    for (Variable child : bn.getChildren().get(name)) {
+                        if (nodes.get(child.getId())) schedule.push(new int[]{child.getId(), 0});
+                    }
+                }
+            }
+        }
+
+        return top;
+    }
+}
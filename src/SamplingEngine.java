@@ -0,0 +1,14 @@
+/**
+ * The interface for the engines estimating the distributions by sampling
+ */
+public interface SamplingEngine extends InferenceEngine {
+
+    /**
+     * Estimating the distribution of the query variable under the evidence with a 95% confidence interval
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the estimated probabilities, the lower ends and the upper ends of the intervals, each indexed by outcome
+     */
+    double[][] interval(int query, Evidence evidence);
+}
@@ -0,0 +1,146 @@
+import java.util.*;
+
+/**
+ * The values of a factor which are mostly zero, kept as the sorted indices and the values of the non-zero entries
+ * e.g. a deterministic CPT of a logic gate keeps one entry of each row
+ * A factor is stored sparse if the fraction of its non-zero entries is at most the density,
+ * which is read from the system property "bn.sparse.density" and can be changed by the setter
+ */
+public class SparseStorage implements ValueStorage {
+
+    /**
+     * The default density, a sparse entry takes 12 bytes and a dense one 8 bytes,
+     * so a factor with half of its entries zero is already smaller and its products skip half of the work
+     */
+    public static final double DEFAULT_DENSITY = 0.5;
+
+    private static volatile double density = Double.parseDouble(System.getProperty("bn.sparse.density", String.valueOf(DEFAULT_DENSITY)));
+
+    private final int size;
+    private final int[] indices;
+    private final double[] values;
+
+    /**
+     * Constructor
+     *
+     * @param size    the number of entries of the factor
+     * @param indices the indices of the non-zero entries in ascending order
+     * @param values  the values of the non-zero entries
+     * @param count   the number of non-zero entries, the arrays are copied if they are longer
+     */
+    public SparseStorage(int size, int[] indices, double[] values, int count) {
+        this.size = size;
+        this.indices = indices.length == count ? indices : Arrays.copyOf(indices, count);
+        this.values = values.length == count ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * @return - the largest fraction of non-zero entries of a factor stored sparse, 0 keeps every factor dense
+     */
+    public static double getDensity() {
+        return density;
+    }
+
+    /**
+     * @param density the largest fraction of non-zero entries of a factor stored sparse, 0 keeps every factor dense
+     */
+    public static void setDensity(double density) {
+        if (!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("The density must be between 0 and 1");
+        }
+        SparseStorage.density = density;
+    }
+
+    /**
+     * @param nonZeros the number of non-zero entries
+     * @param size     the number of entries
+     * @return - true if a factor with the given entries should be stored sparse
+     */
+    public static boolean isSparse(int nonZeros, int size) {
+        return nonZeros <= density * size;
+    }
+
+    /**
+     * Compressing dense values if enough of them are zero
+     *
+     * @param values the values of each assignment
+     * @return storage, or null if the values should stay dense
+     */
+    public static SparseStorage compress(double[] values) {
+        int count = 0;
+        for (double value : values) {
+            if (value != 0) count++;
+        }
+        if (!isSparse(count, values.length)) return null;
+
+        int[] indices = new int[count];
+        double[] nonZeros = new double[count];
+        for (int index = 0, k = 0; index < values.length; index++) {
+            if (values[index] != 0) {
+                indices[k] = index;
+                nonZeros[k++] = values[index];
+            }
+        }
+        return new SparseStorage(values.length, indices, nonZeros, count);
+    }
+
+    /**
+     * @return - the number of non-zero entries
+     */
+    public int nonZeros() {
+        return this.indices.length;
+    }
+
+    /**
+     * @param k the position of the non-zero entry
+     * @return the index of the entry
+     */
+    public int indexAt(int k) {
+        return this.indices[k];
+    }
+
+    /**
+     * @param k the position of the non-zero entry
+     * @return the value of the entry
+     */
+    public double valueAt(int k) {
+        return this.values[k];
+    }
+
+    /**
+     * @return - the values of every entry in a new array
+     */
+    public double[] toArray() {
+        double[] array = new double[this.size];
+        for (int k = 0; k < this.indices.length; k++) {
+            array[this.indices[k]] = this.values[k];
+        }
+        return array;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public double get(int index) {
+        int k = Arrays.binarySearch(this.indices, index);
+        return k >= 0 ? this.values[k] : 0.0;
+    }
+
+    @Override
+    public void write(int index, double[] values, int from, int length) {
+        throw new UnsupportedOperationException("The values of a sparse factor are fixed when it is built");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public void free() {
+        // The arrays are released by the garbage collector
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class for mapping each variable of a BN to a dense id
+ * and each outcome of the variable to a dense index
+ */
+public class SymbolTable {
+
+    private final List<Variable> variables;
+
+    private final HashMap<String, Integer> ids;
+
+    /**
+     * The number of changes of the CPTs of the variables
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Constructor
+     * The ids are given in the order of the variables
+     *
+     * @param variables the variables of the network
+     */
+    public SymbolTable(List<Variable> variables) {
+        this.variables = new ArrayList<>(variables.size());
+        this.ids = new HashMap<>();
+        for (Variable variable : variables) {
+            register(variable);
+        }
+    }
+
+    /**
+     * Registering a variable and giving it the next id
+     *
+     * @param variable
+     * @return id of the variable
+     */
+    private int register(Variable variable) {
+        if (this.ids.containsKey(variable.getName())) {
+            throw new IllegalArgumentException("Duplicate variable: " + variable.getName());
+        }
+        int id = this.variables.size();
+        this.variables.add(variable);
+        this.ids.put(variable.getName(), id);
+        variable.register(id, this);
+        return id;
+    }
+
+    /**
+     * @param name the name of the variable
+     * @return id of the variable or -1 if the network doesn't include it
+     */
+    public int getId(String name) {
+        Integer id = this.ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id id of the variable
+     * @return the variable
+     */
+    public Variable getVariable(int id) {
+        return this.variables.get(id);
+    }
+
+    /**
+     * @param name the name of the variable
+     * @return the variable or null if the network doesn't include it
+     */
+    public Variable getVariable(String name) {
+        int id = getId(name);
+        return id < 0 ? null : this.variables.get(id);
+    }
+
+    /**
+     * Resolving the name of a variable to its id
+     *
+     * @param name the name of the variable
+     * @return id of the variable
+     */
+    public int resolveVariable(String name) {
+        int id = getId(name);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown variable: " + name);
+        }
+        return id;
+    }
+
+    /**
+     * Resolving an outcome of a variable to its index
+     *
+     * @param id      id of the variable
+     * @param outcome the outcome, e.g. "T"
+     * @return index of the outcome
+     */
+    public int resolveOutcome(int id, String outcome) {
+        int index = this.variables.get(id).getOutcomeIndex(outcome);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown outcome: " + this.variables.get(id).getName() + "=" + outcome);
+        }
+        return index;
+    }
+
+    /**
+     * Recording that a CPT of a variable has changed
+     */
+    void modified() {
+        this.version.incrementAndGet();
+    }
+
+    /**
+     * @return the number of changes of the CPTs of the variables
+     */
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * @return - The number of variables
+     */
+    public int size() {
+        return this.variables.size();
+    }
+}
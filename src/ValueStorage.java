@@ -0,0 +1,38 @@
+/**
+ * The interface for the values of a factor which are not kept in a double array on the heap,
+ * e.g. a CPT mapped from a compiled file or a large factor allocated off-heap
+ */
+public interface ValueStorage {
+
+    /**
+     * @return - the number of values
+     */
+    int size();
+
+    /**
+     * @param index the index of the assignment
+     * @return the value
+     */
+    double get(int index);
+
+    /**
+     * Copying values into the storage
+     *
+     * @param index  the index of the first assignment to write
+     * @param values the values
+     * @param from   the position of the first value in the array
+     * @param length the number of values
+     */
+    void write(int index, double[] values, int from, int length);
+
+    /**
+     * @return - true if the values can't be written
+     */
+    boolean isReadOnly();
+
+    /**
+     * Releasing the memory of the values, they can't be read after this
+     * Nothing happens if the memory isn't owned by the storage
+     */
+    void free();
+}
@@ -7,9 +7,12 @@ public class Variable {
     private final String name;
     private List<Variable> parents;
     private final List<String> outcomes;
-    private LinkedHashMap<String, Double> cpt;
+    private final HashMap<String, Integer> outcomeIndices;
+    private int id;
+    private SymbolTable symbols;
+    private Factor cpt;
     private boolean fromChild;
-    public boolean uninitialized;
+    private boolean initialized;
 
     /**
      * Constructor
@@ -20,8 +23,12 @@ public class Variable {
     public Variable(String name, List<String> outcomes) {
         this.name = name;
         this.outcomes = outcomes;
-        this.cpt = new LinkedHashMap<>();
-        this.uninitialized = false;
+        this.outcomeIndices = new HashMap<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            this.outcomeIndices.put(outcomes.get(i), i);
+        }
+        this.id = -1;
+        this.initialized = false;
         this.fromChild = false;
     }
 
@@ -32,33 +39,52 @@ public class Variable {
      * @param parents the variables of parents
      */
     public void initParents(double[] values, Variable[] parents) {
+        initCPT(CPT.constructCPT(values, initScope(parents)));
+    }
 
-        this.parents = new ArrayList<>(Arrays.asList(parents));
-
-        // No parents
-        if (this.parents.size() == 0) {
+    /**
+     * Initialization of parents with the values of outcomes read from a storage without copying them
+     *
+     * @param values  the values of outcomes, e.g. a region of a mapped file
+     * @param parents the variables of parents
+     */
+    public void initParents(ValueStorage values, Variable[] parents) {
+        initCPT(new Factor(initScope(parents), values));
+    }
 
-            for (int i = 0; i < this.outcomes.size(); i++) {
-                this.cpt.put(this.name + '=' + this.outcomes.get(i), values[i]);
-            }
+    /**
+     * @param parents the variables of parents
+     * @return the parents followed by this variable
+     */
+    private Variable[] initScope(Variable[] parents) {
 
-        // Having parents
-        } else {
+        this.parents = new ArrayList<>(Arrays.asList(parents));
 
-            List<List<String>> outcomes = new ArrayList<>();
-            List<String> names = new ArrayList<>();
+        // The parents followed by this variable
+        Variable[] scope = new Variable[this.parents.size() + 1];
+        for (int i = 0; i < this.parents.size(); i++) {
+            scope[i] = this.parents.get(i);
+        }
+        scope[this.parents.size()] = this;
+        return scope;
+    }
 
-            for (Variable p : this.parents) {
-                outcomes.add(p.outcomes);
-                names.add(p.name);
-            }
-            outcomes.add(this.outcomes);
-            names.add(this.name);
-            this.cpt = CPT.constructCPT(values, outcomes, names);
+    private void initCPT(Factor cpt) {
+        this.cpt = cpt;
+        if (this.symbols != null) this.symbols.modified();
 
-        }
-        this.uninitialized = true;
+        this.initialized = true;
+    }
 
+    /**
+     * Giving the variable its id in the symbol table
+     *
+     * @param id      the dense id of the variable
+     * @param symbols the symbol table of the network
+     */
+    void register(int id, SymbolTable symbols) {
+        this.id = id;
+        this.symbols = symbols;
     }
 
     /**
@@ -78,7 +104,7 @@ public class Variable {
     /**
      * @return the origin cpt of this variable
      */
-    public LinkedHashMap<String, Double> getCPT() {
+    public Factor getCPT() {
         return this.cpt;
     }
 
@@ -89,6 +115,43 @@ public class Variable {
         return this.outcomes;
     }
 
+    /**
+     * @return the number of outcomes of variable
+     */
+    public int getCardinality() {
+        return this.outcomes.size();
+    }
+
+    /**
+     * @param outcome the outcome, e.g. "T"
+     * @return index of the outcome or -1 if the variable doesn't have it
+     */
+    public int getOutcomeIndex(String outcome) {
+        Integer index = this.outcomeIndices.get(outcome);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the dense id of the variable in the symbol table
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the symbol table which the variable is registered in
+     */
+    public SymbolTable getSymbolTable() {
+        return this.symbols;
+    }
+
+    /**
+     * @return whether the parents and the CPT of the variable are initialized or not
+     */
+    public boolean isInitialized() {
+        return this.initialized;
+    }
+
     /**
      * @return whether the variable is from child or not
      */
@@ -2,11 +2,67 @@ import java.util.*;
 
 /**
  * The class for the Variable Elimination Algorithm
+ * A query only reads the BN and keeps its factors and Counter to itself,
+ * so queries on a BN which is not changed can run from many threads at once
+ * In the lazy mode, read from the system property "bn.lazy", the product of all the factors of a variable is never built:
+ * every factor but one is joined and each entry of the eliminated factor is summed directly from that product
+ * and the last factor, and the variables left at the end are eliminated one by one instead of joining every factor left
  */
-public class VariableElimination {
+public class VariableElimination implements InferenceEngine {
+
+    /**
+     * The heuristic used when no order is given
+     */
+    public static final EliminationOrder.Heuristic DEFAULT_HEURISTIC = EliminationOrder.Heuristic.MIN_FILL;
+
+    private static volatile boolean lazy = Boolean.getBoolean("bn.lazy");
+
+    private final BN bn;
+
+    private final int[] order;
+
+    private final EliminationOrder.Heuristic heuristic;
+
+    /**
+     * Constructor
+     * The order is computed for each query by the default heuristic
+     *
+     * @param bn instance of BN class
+     */
+    public VariableElimination(BN bn) {
+        this(bn, new int[0], DEFAULT_HEURISTIC);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bn        instance of BN class
+     * @param order     ids of the variables in order for Variable Elimination, or empty
+     * @param heuristic the heuristic for computing the order if no order is given
+     */
+    public VariableElimination(BN bn, int[] order, EliminationOrder.Heuristic heuristic) {
+        this.bn = bn;
+        this.order = order;
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * @return - true if the products of the factors are only computed while summing out a variable
+     */
+    public static boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * @param lazy true to compute the products of the factors only while summing out a variable
+     */
+    public static void setLazy(boolean lazy) {
+        VariableElimination.lazy = lazy;
+    }
 
     /**
      * The function for Variable Elimination
+     * The names and values are resolved to ids once before running the algorithm
      *
      * @param var       the variable which we input on console
      * @param val       the value which we input on console
@@ -17,217 +73,357 @@ public class VariableElimination {
      */
     public static List<Double> VE(String var, String val, ArrayList<String[]> evidences, List<String> order, BN bn) {
 
-        Variable queryVariable = bn.getVariableByName(var);
-        String queryValue = val;
+        SymbolTable symbols = bn.getSymbolTable();
+        int query = symbols.resolveVariable(var);
+        int value = symbols.resolveOutcome(query, val);
+        Evidence evidence = Evidence.resolve(evidences, symbols);
 
-        List<Variable> orderedVariables = new ArrayList<>();
-        if (orderedVariables != null) {
-            for (String s : order) {
-                orderedVariables.add(bn.getVariableByName(s));
-            }
+        int[] orderedVariables = new int[order == null ? 0 : order.size()];
+        for (int i = 0; i < orderedVariables.length; i++) {
+            orderedVariables[i] = symbols.resolveVariable(order.get(i));
         }
 
-//        System.out.println("queryVariable: " + queryVariable + ", queryValue: " + queryValue + ", evidences: " + evidences + ", order: " + order);
+        return VE(query, value, evidence, orderedVariables, bn);
+    }
 
-        List<String> evidenceValues = new ArrayList<>();
-        List<Variable> evidenceVariables = new ArrayList<>();
-        if (evidences != null && evidences.size() > 0) {
-            for (String[] evidence : evidences) {
-                if (evidence != null && evidence.length > 0) {
-                    evidenceVariables.add(bn.getVariableByName(evidence[0]));
-                    evidenceValues.add(evidence[1]);
-                }
-            }
-        }
+    /**
+     * The function for Variable Elimination on resolved ids
+     *
+     * @param query    id of the query variable
+     * @param value    outcome index of the query variable
+     * @param evidence the evidence variables
+     * @param order    ids of the variables in order for Variable Elimination
+     * @param bn       instance of BN class
+     * @return the probability of the query, the number of additions, the number of multiplications
+     * and the number of values of the largest factor built
+     */
+    public static List<Double> VE(int query, int value, Evidence evidence, int[] order, BN bn) {
+        return VE(query, value, evidence, order, bn, DEFAULT_HEURISTIC);
+    }
+
+    /**
+     * The function for Variable Elimination on resolved ids
+     * If no order is given, the order is computed by the given heuristic
+     *
+     * @param query     id of the query variable
+     * @param value     outcome index of the query variable
+     * @param evidence  the evidence variables
+     * @param order     ids of the variables in order for Variable Elimination, or empty
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for computing the order
+     * @return the probability of the query, the number of additions, the number of multiplications
+     * and the number of values of the largest factor built
+     */
+    public static List<Double> VE(int query, int value, Evidence evidence, int[] order, BN bn, EliminationOrder.Heuristic heuristic) {
 
         // The counter for the number of addition and multiplication
         Counter counter = new Counter();
 
-        // The factors for variables
-        LinkedHashMap<String, LinkedHashMap<String, Double>> factors = new LinkedHashMap<>();
+        double[] distribution = posterior(query, evidence, order, bn, heuristic, counter);
 
-        // Adding the names of evidenceVariables to evidenceVariablesNames
-        List<String> evidenceVariablesNames = new ArrayList<>();
-        for (Variable variable : evidenceVariables) {
-            evidenceVariablesNames.add(variable.getName());
-        }
+        List<Double> result = new ArrayList<>();
+        // The probability for given variable
+        result.add(distribution[value]);
+        // The number of additions
+        result.add((double) counter.getNumberOfAdditions());
+        // The number of multiples
+        result.add((double) counter.getNumberOfMultiplies());
+        // The size of the largest factor
+        result.add((double) counter.getLargestFactor());
 
-        // Adding variables to factors
-        for (Variable variable : bn.getVariables()) {
-            factors.put(variable.getName(), CPT.updateCPT(evidenceVariablesNames, evidenceValues, variable.getCPT()));
-        }
+        return result;
+    }
 
-        // Checking whether one of the factors includes the necessary value of queryVariable alone
-        if (evidenceVariables.isEmpty()) {
-            for (Map.Entry<String, LinkedHashMap<String, Double>> f : factors.entrySet()) {
-                for (Map.Entry<String, Double> line : f.getValue().entrySet()) {
-                    if (line.getKey().equals(queryValue)) {
-                        List<Double> result = new ArrayList<>();
-                        result.add(line.getValue());
-                        result.add(0.0);
-                        result.add(0.0);
-                        return result;
-                    }
-                }
-            }
+    /**
+     * Computing the distribution of the query variable under the evidence by Variable Elimination
+     *
+     * @param query     id of the query variable
+     * @param evidence  the evidence variables
+     * @param order     ids of the variables in order for Variable Elimination, or empty
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for computing the order
+     * @param counter   the counter of this query for the number of addition and multiplication
+     * @return the probability of each outcome of the query variable
+     */
+    public static double[] posterior(int query, Evidence evidence, int[] order, BN bn, EliminationOrder.Heuristic heuristic, Counter counter) {
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        double[] distribution = eliminate(query, evidence, order, bn, heuristic, counter);
+
+        long nanos = System.nanoTime() - start;
+        InferenceMetrics.get().recordQuery(nanos, counter);
+        if (event.shouldCommit()) {
+            event.engine = "VE";
+            event.variable = bn.getSymbolTable().getVariable(query).getName();
+            event.evidence = evidence.size();
+            event.additions = counter.getNumberOfAdditions();
+            event.multiplications = counter.getNumberOfMultiplies();
+            event.largestFactor = counter.getLargestFactor();
+            event.commit();
         }
+        return distribution;
+    }
 
-//        System.out.println("Initial Factors:");
-//        for (Map.Entry<String, LinkedHashMap<String, Double>> f : factors.entrySet()) {
-//            System.out.println(f.getKey() + ":");
-//            System.out.println(Utils.hashMapToString(f.getValue()));
-//        }
-
-        // Join factors for each ordered variable
-        if (!orderedVariables.isEmpty()) {
-            for (Variable h : orderedVariables) {
+    /**
+     * Eliminating every variable except the query variable
+     *
+     * @param query     id of the query variable
+     * @param evidence  the evidence variables
+     * @param order     ids of the variables in order for Variable Elimination, or empty
+     * @param bn        instance of BN class
+     * @param heuristic the heuristic for computing the order
+     * @param counter   the counter for the number of addition and multiplication
+     * @return the probability of each outcome of the query variable
+     */
+    private static double[] eliminate(int query, Evidence evidence, int[] order, BN bn, EliminationOrder.Heuristic heuristic, Counter counter) {
 
-                // CPTs which includes the orderedVariables
-                List<LinkedHashMap<String, Double>> cpts = new ArrayList<>();
-                List<String> variableNames = new ArrayList<>();
+        SymbolTable symbols = bn.getSymbolTable();
 
-                for (Map.Entry<String, LinkedHashMap<String, Double>> entry : factors.entrySet()) {
-                    if (CPT.getNames(entry.getValue()).contains(h.getName())) {
-                        cpts.add(entry.getValue());
-                        variableNames.add(entry.getKey());
-                    }
-                }
+        // The query variable is known if it is an evidence
+        if (evidence.contains(query)) {
+            double[] distribution = new double[symbols.getVariable(query).getCardinality()];
+            distribution[evidence.getValue(query)] = 1.0;
+            return distribution;
+        }
 
-                String lastName = "empty";
-                if (variableNames.size() > 1) {
-                    for (String name : variableNames) {
-                        factors.remove(name);
-                        lastName = name;
-                    }
-                } else if (variableNames.size() == 1) {
-                    lastName = variableNames.get(0);
-                }
+        // Dropping the barren variables and the variables d-separated from the query
+        BitSet relevant = RelevanceFilter.getRelevantVariables(query, evidence, bn);
 
-                if (!cpts.isEmpty()) {
-                    if (cpts.size() > 0) {
+        if (order.length == 0) {
+            order = new EliminationOrder(bn).getOrder(relevant, query, evidence, heuristic);
+        }
 
-//                        System.out.println("Factor which joins with " + h.getName() + ":\n");
-//                        for (LinkedHashMap<String, Double> cpt : cpts) {
-//                            System.out.println(Utils.hashMapToString(cpt));
-//                        }
+        // The factors for variables
+        List<Factor> factors = new ArrayList<>();
 
-                        // join cpt_to_join (all the factors that mentioning h) to one factor
-                        LinkedHashMap<String, Double> newFactor = CPT.integrateFactors(cpts, counter);
+        // Adding variables to factors
+        for (int id = relevant.nextSetBit(0); id >= 0; id = relevant.nextSetBit(id + 1)) {
+            factors.add(CPT.updateCPT(evidence, symbols.getVariable(id).getCPT()));
+        }
 
-//                        System.out.println("Before eliminate " + h.getName() + "\n");
-//                        System.out.println("counter: " + counter);
-//                        System.out.println(Utils.hashMapToString(newFactor));
+        // Join factors for each ordered variable
+        for (int h : order) {
 
-                        boolean factorToAdd = true;
+            if (h == query || evidence.contains(h)) continue;
 
-                        // eliminate factor
-                        if (CPT.getNames(newFactor).size() > 0) {
-                            newFactor = CPT.eliminate(newFactor, h, counter);
-                        } else if (CPT.getNames(newFactor).size() == 1) {
-                            factorToAdd = false;
-                        }
+            // CPTs which includes the orderedVariables
+            List<Factor> cpts = new ArrayList<>();
+            int last = -1;
 
-//                        System.out.println("After eliminate " + h.getName() + "\n");
-//                        System.out.println("counter: " + counter);
-//                        System.out.println(Utils.hashMapToString(newFactor));
-                        if (factorToAdd) factors.put(lastName, newFactor);
-                    }
+            for (int i = 0; i < factors.size(); i++) {
+                if (factors.get(i).contains(h)) {
+                    cpts.add(factors.get(i));
+                    factors.set(i, null);
+                    last = i;
                 }
             }
-        }
 
-//        System.out.println("Remaining Factors: ");
-        for (Map.Entry<String, LinkedHashMap<String, Double>> f : factors.entrySet()) {
-//            System.out.println("Name: " + f.getKey());
-//            System.out.println(Utils.hashMapToString(f.getValue()));
+            if (cpts.isEmpty()) continue;
+
+            factors.set(last, eliminateBucket(cpts, symbols.getVariable(h), counter));
+            factors.removeIf(Objects::isNull);
         }
 
         // Removing the factors if the size <= 1
-        LinkedHashMap<String, Integer> sizes = new LinkedHashMap<>();
-        for (Map.Entry<String, LinkedHashMap<String, Double>> factor : factors.entrySet()) {
-            sizes.put(factor.getKey(), factor.getValue().size());
+        factors.removeIf(factor -> factor.size() <= 1);
+
+        Factor lastFactor;
+        EliminationEvent event = new EliminationEvent();
+        event.begin();
+        long allocated = event.isEnabled() ? EliminationEvent.allocatedBytes() : 0;
+
+        if (lazy) {
+            // Eliminating the variables left one by one, the one with the smallest result first
+            lastFactor = eliminateRemaining(factors, query, counter);
+        // In the case of including more than one factor
+        } else if (factors.size() > 1) {
+            lastFactor = CPT.integrateFactors(factors, counter);
+        // Getting the one left factor
+        } else if (factors.size() == 1) {
+            lastFactor = factors.get(0);
+        } else {
+            lastFactor = Factor.scalar(1.0);
         }
-        for (Map.Entry<String, Integer> factor : sizes.entrySet()) {
-            if (factor.getValue() <= 1) {
-                factors.remove(factor.getKey());
-            }
+
+        // Summing out every variable except the query variable at once
+        List<Variable> others = new ArrayList<>();
+        for (Variable variable : lastFactor.getScope()) {
+            if (variable.getId() != query) others.add(variable);
+        }
+        Factor marginal = CPT.eliminate(lastFactor, others.toArray(new Variable[0]), counter);
+
+        // The lazy mode records each of its own steps
+        if (!lazy && (factors.size() > 1 || !others.isEmpty()) && event.shouldCommit()) {
+            StringJoiner names = new StringJoiner(",");
+            for (Variable variable : others) names.add(variable.getName());
+            long inputSize = 0;
+            for (Factor factor : factors) inputSize += factor.size();
+            event.variables = names.toString();
+            event.inputs = factors.size();
+            event.inputSize = inputSize;
+            event.outputSize = marginal.size();
+            event.allocated = EliminationEvent.allocatedBytes() - allocated;
+            event.commit();
         }
 
-//        for (Map.Entry<String, LinkedHashMap<String, Double>> e : factors.entrySet()) {
-//            System.out.println(Utils.hashMapToString(e.getValue()));
-//        }
+        // Normalizing the lastFactor
+        Factor result = normalize(marginal, counter);
 
-        LinkedHashMap<String, Double> lastFactor = new LinkedHashMap<>();
+        for (Factor factor : factors) factor.free();
+        lastFactor.free();
+        marginal.free();
 
-        // In the case of including more than one factor
-        if (factors.size() > 1) {
-            List<LinkedHashMap<String, Double>> factorsLeft = new ArrayList<>();
-            for (Map.Entry<String, LinkedHashMap<String, Double>> factor : factors.entrySet()) {
-                factorsLeft.add(factor.getValue());
+        return result.getValues();
+    }
+
+    /**
+     * Multiplying the factors mentioning a variable and summing the variable out
+     * The factors are released after, the CPTs themselves are never freed
+     *
+     * @param cpts     the factors mentioning the variable
+     * @param variable the variable to sum out
+     * @param counter  the counter for the number of addition and multiplication
+     * @return the factor over the other variables of the factors
+     */
+    private static Factor eliminateBucket(List<Factor> cpts, Variable variable, Counter counter) {
+        EliminationEvent event = new EliminationEvent();
+        event.begin();
+        long allocated = event.isEnabled() ? EliminationEvent.allocatedBytes() : 0;
+
+        Factor result;
+        // Sparse factors are joined first so that their zeros are still skipped
+        if (lazy && cpts.stream().noneMatch(Factor::isSparse)) {
+            // Joining every factor but one, and summing the variable out of the product with the last one
+            List<Factor> pair = cpts;
+            Factor joined = null;
+            if (cpts.size() > 2) {
+                List<Factor> rest = new ArrayList<>(cpts);
+                Factor aside = rest.remove(setAside(cpts));
+                joined = CPT.integrateFactors(rest, counter);
+                pair = Arrays.asList(joined, aside);
             }
-            lastFactor = CPT.integrateFactors(factorsLeft, counter);
-        // Getting the one left factor
+            result = CPT.multiplyAndEliminate(pair, new Variable[]{variable}, counter);
+            if (joined != null) joined.free();
         } else {
-            for (Map.Entry<String, LinkedHashMap<String, Double>> factor : factors.entrySet()) {
-                lastFactor = new LinkedHashMap<>(factor.getValue());
-//                System.out.println("last factor:");
-//                System.out.println(Utils.hashMapToString(lastFactor));
-                break;
-            }
+            // join cpt_to_join (all the factors that mentioning h) to one factor
+            Factor newFactor = CPT.integrateFactors(cpts, counter);
+
+            // eliminate factor
+            result = CPT.eliminate(newFactor, variable, counter);
+            newFactor.free();
+        }
+
+        if (event.shouldCommit()) {
+            long inputSize = 0;
+            for (Factor cpt : cpts) inputSize += cpt.size();
+            event.variables = variable.getName();
+            event.inputs = cpts.size();
+            event.inputSize = inputSize;
+            event.outputSize = result.size();
+            event.allocated = EliminationEvent.allocatedBytes() - allocated;
+            event.commit();
         }
 
-        List<String> variableNames = CPT.getNames(lastFactor);
-        if (variableNames.size() > 1) {
-            variableNames.remove(queryVariable.getName());
-//            System.out.println("Updated factors based on the evidence: ");
-//            System.out.println(Utils.hashMapToString(lastFactor));
-            for (String name : variableNames) {
-//                System.out.println("Name: " + name);
-                lastFactor = CPT.eliminate(lastFactor, bn.getVariableByName(name), counter);
-//                System.out.println("Factors after eliminate " + name + ": ");
-//                System.out.println(Utils.hashMapToString(lastFactor));
-//                Double cptValue = 0.0;
-//                List<String> cptCalculation = new ArrayList<>();
-//                for (Map.Entry<String, Double> f : lastFactor.entrySet()) {
-//                    cptValue += f.getValue();
-//                    cptCalculation.add(Double.toString(f.getValue()));
-//                }
-//                String cptFormula = String.join(" + ", cptCalculation);
-//                String cptFormula = String.join(" + \n", cptCalculation);
-//                System.out.println("Sum of CPT = " + cptFormula + " = " + Math.round(cptValue));
-//                System.out.println("Sum of CPT = " + cptFormula + " = " + Math.round(cptValue) + "\n");
+        // Releasing the off-heap memory of the joined factors
+        for (Factor cpt : cpts) cpt.free();
+        return result;
+    }
+
+    /**
+     * @param cpts the factors mentioning a variable
+     * @return the index of the factor whose absence leaves the smallest product of the others
+     */
+    private static int setAside(List<Factor> cpts) {
+        int best = 0;
+        long bestSize = Long.MAX_VALUE;
+        for (int i = 0; i < cpts.size(); i++) {
+            Set<Variable> scope = new HashSet<>();
+            for (int j = 0; j < cpts.size(); j++) {
+                if (j != i) scope.addAll(Arrays.asList(cpts.get(j).getScope()));
+            }
+            long size = 1;
+            for (Variable v : scope) size *= v.getCardinality();
+            if (size < bestSize) {
+                best = i;
+                bestSize = size;
             }
         }
+        return best;
+    }
 
-        // Normalizing the lastFactor
-        lastFactor = normalize(lastFactor, counter);
-//        System.out.println("Probability: (after normalize)");
-//        System.out.println("counter: " + counter);
-//        System.out.println(Utils.hashMapToString(lastFactor));
-
-        double probability = 0.0;
-        for (Map.Entry<String, Double> factor : lastFactor.entrySet()) {
-            if (factor.getKey().contains(queryValue)) {
-                probability = factor.getValue();
-                break;
+    /**
+     * Eliminating every variable except the query variable from the factors left after the order,
+     * each time the variable whose eliminated factor is the smallest
+     *
+     * @param factors the factors left
+     * @param query   id of the query variable
+     * @param counter the counter for the number of addition and multiplication
+     * @return the factor over the query variable
+     */
+    private static Factor eliminateRemaining(List<Factor> factors, int query, Counter counter) {
+        while (true) {
+            Variable best = null;
+            long bestSize = Long.MAX_VALUE;
+            for (Factor factor : factors) {
+                for (Variable variable : factor.getScope()) {
+                    if (variable.getId() == query) continue;
+                    long size = eliminatedSize(factors, variable);
+                    if (size < bestSize) {
+                        best = variable;
+                        bestSize = size;
+                    }
+                }
+            }
+            if (best == null) break;
+
+            List<Factor> cpts = new ArrayList<>();
+            int last = -1;
+            for (int i = 0; i < factors.size(); i++) {
+                if (factors.get(i).contains(best)) {
+                    cpts.add(factors.get(i));
+                    factors.set(i, null);
+                    last = i;
+                }
             }
+            factors.set(last, eliminateBucket(cpts, best, counter));
+            factors.removeIf(Objects::isNull);
         }
 
-//        System.out.println("FINAL VALUE IS " + val);
+        // Every factor left is over the query variable only
+        if (factors.isEmpty()) return Factor.scalar(1.0);
+        if (factors.size() == 1) return factors.get(0);
+        return CPT.integrateFactors(factors, counter);
+    }
 
-        List<Double> result = new ArrayList<>();
-        // The probability for given variable
-        result.add(probability);
-        // The number of additions
-        result.add((double) counter.getNumberOfAdditions());
-//        System.out.println("The number of additions: ");
-//        System.out.println(counter.getNumberOfAdditions());
-        // The number of multiples
-        result.add((double) counter.getNumberOfMultiplies());
-//        System.out.println("The number of multiples: ");
-//        System.out.println(counter.getNumberOfMultiplies());
+    /**
+     * @param factors  the factors
+     * @param variable the variable to sum out
+     * @return the number of values of the factor left by summing the variable out of the factors mentioning it
+     */
+    private static long eliminatedSize(List<Factor> factors, Variable variable) {
+        Set<Variable> scope = new HashSet<>();
+        for (Factor factor : factors) {
+            if (factor.contains(variable)) scope.addAll(Arrays.asList(factor.getScope()));
+        }
+        long size = 1;
+        for (Variable v : scope) {
+            if (v != variable) size *= v.getCardinality();
+        }
+        return size;
+    }
 
-        return result;
+    /**
+     * Computing the distribution of the query variable under the evidence
+     *
+     * @param query    id of the query variable
+     * @param evidence the evidence variables
+     * @return the probability of each outcome of the query variable
+     */
+    @Override
+    public double[] posterior(int query, Evidence evidence) {
+        return posterior(query, evidence, this.order, this.bn, this.heuristic, new Counter());
     }
 
     /**
@@ -236,40 +432,20 @@ public class VariableElimination {
      * @param factor
      * @return normalized given factor
      */
-    public static LinkedHashMap<String, Double> normalize(LinkedHashMap<String, Double> factor, Counter counter) {
-
-        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
-        factor = Utils.removeDuplicateValuesInKeys(factor);
-
-//        System.out.println("Normalizable factor :");
-//        System.out.println(Utils.hashMapToString(factor));
+    public static Factor normalize(Factor factor, Counter counter) {
 
-        LinkedHashMap<String, List<String>> outcomes = CPT.getNamesAndOutcomes(factor);
-        String variableName = "";
-        for (Map.Entry<String, List<String>> entry : outcomes.entrySet()) {
-            variableName = entry.getKey();
-        }
-        List<String> variableOutcomes = outcomes.get(variableName);
-        List<String> variableOutcomesKeys = new ArrayList<>();
-        for (String outcome : variableOutcomes) {
-            String value = variableName + "=" + outcome;
-            variableOutcomesKeys.add(value);
-        }
-        List<Double> values = new ArrayList<>();
-
-        for (String outcome : variableOutcomesKeys) {
-            values.add(factor.get(outcome));
-        }
+        Factor result = new Factor(factor.getScope());
+        double[] values = result.getValues();
 
-        counter.sumAdd(values.size() - 1);
+        counter.sumAdd(factor.size() - 1);
 
         double exp = 0.0;
-        for (Double value : values) {
-            exp += value;
+        for (int i = 0; i < values.length; i++) {
+            exp += factor.getValue(i);
         }
         exp = 1 / exp;
-        for (Map.Entry<String, Double> entry : factor.entrySet()) {
-            result.put(entry.getKey(), entry.getValue() * exp);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = factor.getValue(i) * exp;
         }
         return result;
     }
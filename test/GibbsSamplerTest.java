@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The tests of the estimates of GibbsSampler against the exact posteriors of Variable Elimination
+ */
+class GibbsSamplerTest {
+
+    private static final double TOLERANCE = 0.02;
+
+    private static BN load(String path) throws IOException {
+        return new BN(FileManager.loadVariables(path));
+    }
+
+    private static Evidence evidence(BN bn, String... pairs) {
+        List<String[]> evidences = new ArrayList<>();
+        for (String pair : pairs) evidences.add(pair.split(":"));
+        return Evidence.resolve(evidences, bn.getSymbolTable());
+    }
+
+    private static void assertClose(BN bn, String variable, Evidence evidence) {
+        int query = bn.getSymbolTable().resolveVariable(variable);
+        double[] expected = VariableElimination.posterior(query, evidence, new int[0], bn,
+                VariableElimination.DEFAULT_HEURISTIC, new Counter());
+        GibbsSampler.Estimate estimate = new GibbsSampler(bn, GibbsSampler.DEFAULT_CHAINS, GibbsSampler.DEFAULT_BURN_IN,
+                GibbsSampler.DEFAULT_THINNING, GibbsSampler.DEFAULT_SAMPLES, GibbsSampler.DEFAULT_R_HAT,
+                GibbsSampler.DEFAULT_MCSE, 1L).estimate(query, evidence);
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], estimate.getProbability(k), TOLERANCE, "P(" + variable + "=" + k + "|" + evidence + ") " + estimate);
+        }
+    }
+
+    @Test
+    void estimatesWithoutEvidence() throws IOException {
+        BN bn = load("../xml/BNB.xml");
+        assertClose(bn, "O", evidence(bn));
+    }
+
+    @Test
+    void estimatesWithUnlikelyEvidence() throws IOException {
+        // P(P=T, Q=F) is about 0.015, so most forward samples disagree with the evidence
+        BN bn = load("../xml/BNC.xml");
+        Evidence evidence = evidence(bn, "P:T", "Q:F");
+        assertClose(bn, "Z", evidence);
+        assertClose(bn, "U", evidence);
+    }
+
+    @Test
+    void stopsOnlyWhenTheErrorIsSmall() throws IOException {
+        BN bn = load("../xml/BNC.xml");
+        int query = bn.getSymbolTable().resolveVariable("U");
+        GibbsSampler.Estimate estimate = new GibbsSampler(bn).estimate(query, evidence(bn, "P:T", "Q:F"));
+        assertTrue(estimate.getSamples() == GibbsSampler.DEFAULT_CHAINS * GibbsSampler.DEFAULT_SAMPLES
+                || estimate.getMcse() <= GibbsSampler.DEFAULT_MCSE && estimate.getRHat() <= GibbsSampler.DEFAULT_R_HAT, estimate.toString());
+    }
+}
@@ -0,0 +1,135 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The check of the error of float precision against double precision on generated networks
+ *
+ * The bound: every value stored in a float factor is the value computed in double times (1 + d) with |d| <= u = 2^-24,
+ * and the kernels compute every product and sum in double, so each factor made by VE rounds its values once.
+ * Every value is non-negative, so a sum of values each within a relative error e is within e as well,
+ * and a value which went through m roundings is within gamma(m) = m u / (1 - m u).
+ * Each value of the marginal of the query went through at most m = 3n roundings for n variables:
+ * n CPTs, at most n - 1 products (each product removes one factor) and at most n sums.
+ * The probability is the ratio of such a value to their sum, so
+ * |p_float - p_double| <= 2 gamma(3n) / (1 - gamma(3n)) * p_double
+ * plus the error of the double arithmetic itself, bounded the same way with u = 2^-53 and m the number of operations.
+ * The bound assumes no value falls below Float.MIN_NORMAL, which holds for networks with moderate scopes
+ * such as the generated ones, whose probabilities are at least 1 / 1024
+ */
+class PrecisionCheckTest {
+
+    private static final double FLOAT_UNIT = Math.ulp(1.0f) / 2;
+
+    private static final double DOUBLE_UNIT = Math.ulp(1.0) / 2;
+
+    private static final int NETWORKS = 20;
+
+    private static final int NODES = 30;
+
+    private static final int QUERIES = 50;
+
+    private static final int MAX_EVIDENCE = 3;
+
+    private static final int WIDTH = 6;
+
+    private static final long SEED = 1;
+
+    private Precision precision;
+
+    /**
+     * @param m    the number of roundings
+     * @param unit the unit roundoff
+     * @return the relative error of a value after m roundings
+     */
+    private static double gamma(double m, double unit) {
+        return m * unit / (1 - m * unit);
+    }
+
+    /**
+     * @param variables  the number of variables of the network
+     * @param operations the number of additions and multiplications of the query
+     * @return the largest relative error of a probability in float precision
+     */
+    static double bound(int variables, long operations) {
+        double single = gamma(3.0 * variables, FLOAT_UNIT);
+        double dual = gamma(3.0 * variables + operations, DOUBLE_UNIT);
+        return 2 * single / (1 - single) + 2 * dual / (1 - dual);
+    }
+
+    @BeforeEach
+    void savePrecision() {
+        this.precision = Precision.get();
+    }
+
+    @AfterEach
+    void restorePrecision() {
+        Precision.set(this.precision);
+    }
+
+    @Test
+    void floatErrorIsWithinTheBound(@TempDir Path directory) throws IOException {
+        NetworkGenerator.Family[] families = NetworkGenerator.Family.values();
+        Random random = new Random(SEED);
+        File file = directory.resolve("precision.xml").toFile();
+        List<String> failures = new ArrayList<>();
+
+        for (int k = 0; k < NETWORKS; k++) {
+            NetworkGenerator.Family family = families[k % families.length];
+            NetworkGenerator generator = new NetworkGenerator(family, NODES, 3, 2, 3, WIDTH, WIDTH, SEED + k);
+            try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+                generator.generate(writer);
+            }
+
+            // The same network loaded in each precision
+            Precision.set(Precision.DOUBLE);
+            BN doubleBN = new BN(FileManager.loadVariables(file.getPath()));
+            Precision.set(Precision.FLOAT);
+            BN floatBN = new BN(FileManager.loadVariables(file.getPath()));
+            SymbolTable symbols = doubleBN.getSymbolTable();
+
+            for (int q = 0; q < QUERIES; q++) {
+                int query = random.nextInt(NODES);
+                List<String[]> pairs = new ArrayList<>();
+                int count = random.nextInt(MAX_EVIDENCE + 1);
+                Set<Integer> observed = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    // A variable is given at most one value
+                    int id = random.nextInt(NODES);
+                    if (!observed.add(id)) continue;
+                    Variable variable = symbols.getVariable(id);
+                    String outcome = variable.getOutcomes().get(random.nextInt(variable.getCardinality()));
+                    pairs.add(new String[]{variable.getName(), outcome});
+                }
+                Evidence evidence = Evidence.resolve(pairs, symbols);
+
+                Counter counter = new Counter();
+                Precision.set(Precision.DOUBLE);
+                double[] expected = VariableElimination.posterior(query, evidence, new int[0], doubleBN,
+                        VariableElimination.DEFAULT_HEURISTIC, counter);
+                Precision.set(Precision.FLOAT);
+                double[] actual = VariableElimination.posterior(query, evidence, new int[0], floatBN,
+                        VariableElimination.DEFAULT_HEURISTIC, new Counter());
+
+                double bound = bound(NODES, counter.getNumberOfAdditions() + counter.getNumberOfMultiplies());
+                for (int i = 0; i < expected.length; i++) {
+                    double error = Math.abs(actual[i] - expected[i]);
+                    double relative = expected[i] == 0 ? error : error / expected[i];
+                    if (relative > bound) {
+                        failures.add(family + " network " + k + ": P(" + symbols.getVariable(query).getName()
+                                + "=" + i + "|" + evidence + ") = " + actual[i] + " in float but " + expected[i]
+                                + " in double, relative error " + relative + " > bound " + bound);
+                    }
+                }
+            }
+        }
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+}